@@ -2,7 +2,6 @@ package edu.cwru.sepia.agent;
 
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.environment.model.history.History;
-import edu.cwru.sepia.environment.model.state.ResourceNode;
 import edu.cwru.sepia.environment.model.state.State;
 import edu.cwru.sepia.environment.model.state.Unit;
 import edu.cwru.sepia.util.Direction;
@@ -24,18 +23,73 @@ public class AstarAgent extends Agent {
         }
     }
 
-    Stack<MapLocation> path;
-    int footmanID, townhallID, enemyFootmanID;
-    MapLocation nextLoc;
+    /**
+     * The path planners the agent can be run with, picked by the first agent argument.
+     * ASTAR searches from scratch on every replan, INCREMENTAL keeps a D* Lite search
+     * alive between turns and only repairs it when the enemy footman moves, JPS searches
+     * from scratch but only expands jump points, HPA plans over cluster entrances and
+     * only rebuilds the clusters whose tiles changed, ALT is ASTAR with a landmark
+     * heuristic whose tables are cached in data/, FLOW walks down a distance field from
+     * the townhall that is repaired locally when the enemy footman moves.
+     */
+    enum Planner
+    {
+        ASTAR, INCREMENTAL, JPS, HPA, ALT, FLOW
+    }
+
+    static final int DEFAULT_CLUSTER_SIZE = 16;
 
-    private long totalPlanTime = 0; // nsecs
-    private long totalExecutionTime = 0; //nsecs
+    PlannedPath path;
+    int footmanID, townhallID, enemyFootmanID;
+    int nextCell = -1;
+
+    private final Planner planner;
+    private GridPathfinder search;
+    private DStarLite incremental;
+    private int incrementalEnemyCell = -1;
+    private HierarchicalPathfinder hierarchical;
+    private final int clusterSize;
+    private FlowField flowField;
+    private int flowFieldEnemyCell = -1;
+
+    private static final int PLAN_PHASE = 0;
+    private static final int EXECUTE_PHASE = 1;
+    private final AgentMetrics metrics = new AgentMetrics("AstarAgent", "plan", "execute");
+    private int totalReplans = 0;
+
+    private final boolean headless;
+    private boolean townhallDestroyed = false;
+    private boolean gaveUp = false;
 
     public AstarAgent(int playernum)
+    {
+        this(playernum, new String[0]);
+    }
+
+    public AstarAgent(int playernum, String[] args)
+    {
+        this(playernum, args.length > 0 ? Planner.valueOf(args[0].toUpperCase()) : Planner.ASTAR,
+                args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CLUSTER_SIZE, false);
+    }
+
+    /**
+     * @param playernum
+     * @param planner the path planner to use
+     * @param clusterSize cluster width and height for the HPA planner
+     * @param headless true when running many episodes in a batch: nothing is printed and
+     *                 a map with no path ends the episode (see isDone) instead of the program
+     */
+    AstarAgent(int playernum, Planner planner, int clusterSize, boolean headless)
     {
         super(playernum);
 
-        System.out.println("Constructed AstarAgent");
+        this.planner = planner;
+        this.clusterSize = clusterSize;
+        this.headless = headless;
+
+        if(!headless) {
+            System.out.println("Constructed AstarAgent (" + planner.name().toLowerCase() + " planner)");
+        }
     }
 
     @Override
@@ -109,44 +163,55 @@ public class AstarAgent extends Agent {
             return null;
         }
 
-        long startTime = System.nanoTime();
-        path = findPath(newstate);
-        totalPlanTime += System.nanoTime() - startTime;
+        path = new PlannedPath(newstate.getXExtent(), newstate.getYExtent());
+
+        long startTime = metrics.start();
+        path.set(findPath(newstate));
+        metrics.stop(PLAN_PHASE, startTime);
 
         return middleStep(newstate, statehistory);
     }
 
     @Override
     public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
-        long startTime = System.nanoTime();
+        long startTime = metrics.start();
         long planTime = 0;
 
         Map<Integer, Action> actions = new HashMap<Integer, Action>();
 
         if(shouldReplanPath(newstate, statehistory, path)) {
-            long planStartTime = System.nanoTime();
-            path = findPath(newstate);
-            planTime = System.nanoTime() - planStartTime;
-            totalPlanTime += planTime;
+            long planStartTime = metrics.start();
+            path.set(findPath(newstate));
+            planTime = metrics.stop(PLAN_PHASE, planStartTime);
+            totalReplans++;
+        }
+
+        // a headless agent with no path just waits for the runner to end the episode
+        if(gaveUp) {
+            metrics.stepFinished(startTime);
+            return actions;
         }
 
         Unit.UnitView footmanUnit = newstate.getUnit(footmanID);
 
         int footmanX = footmanUnit.getXPosition();
         int footmanY = footmanUnit.getYPosition();
+        int footmanCell = footmanX + footmanY * newstate.getXExtent();
 
-        if(!path.empty() && (nextLoc == null || (footmanX == nextLoc.x && footmanY == nextLoc.y))) {
+        if(!path.isEmpty() && (nextCell == -1 || footmanCell == nextCell)) {
 
             // stat moving to the next step in the path
-            nextLoc = path.pop();
+            nextCell = path.next();
 
-            System.out.println("Moving to (" + nextLoc.x + ", " + nextLoc.y + ")");
+            if(!headless) {
+                System.out.println("Moving to (" + path.x(nextCell) + ", " + path.y(nextCell) + ")");
+            }
         }
 
-        if(nextLoc != null && (footmanX != nextLoc.x || footmanY != nextLoc.y))
+        if(nextCell != -1 && footmanCell != nextCell)
         {
-            int xDiff = nextLoc.x - footmanX;
-            int yDiff = nextLoc.y - footmanY;
+            int xDiff = path.x(nextCell) - footmanX;
+            int yDiff = path.y(nextCell) - footmanY;
 
             // figure out the direction the footman needs to move in
             Direction nextDirection = getNextDirection(xDiff, yDiff);
@@ -157,6 +222,7 @@ public class AstarAgent extends Agent {
 
             // if townhall was destroyed on the last turn
             if(townhallUnit == null) {
+                townhallDestroyed = true;
                 terminalStep(newstate, statehistory);
                 return actions;
             }
@@ -165,26 +231,61 @@ public class AstarAgent extends Agent {
                     Math.abs(footmanY - townhallUnit.getYPosition()) > 1)
             {
                 System.err.println("Invalid plan. Cannot attack townhall");
-                totalExecutionTime += System.nanoTime() - startTime - planTime;
+                metrics.add(EXECUTE_PHASE, metrics.stepFinished(startTime) - planTime);
                 return actions;
             }
             else {
-                System.out.println("Attacking TownHall");
+                if(!headless) {
+                    System.out.println("Attacking TownHall");
+                }
                 // if no more movements in the planned path then attack
                 actions.put(footmanID, Action.createPrimitiveAttack(footmanID, townhallID));
             }
         }
 
-        totalExecutionTime += System.nanoTime() - startTime - planTime;
+        metrics.add(EXECUTE_PHASE, metrics.stepFinished(startTime) - planTime);
         return actions;
     }
 
     @Override
     public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
+        if(headless) return;
+
         System.out.println("Total turns: " + newstate.getTurnNumber());
-        System.out.println("Total planning time: " + totalPlanTime/1e9);
-        System.out.println("Total execution time: " + totalExecutionTime/1e9);
-        System.out.println("Total time: " + (totalExecutionTime + totalPlanTime)/1e9);
+        System.out.println("Planner: " + planner.name().toLowerCase());
+        System.out.println("Total replans: " + totalReplans);
+        System.out.println("Total planning time: " + getTotalPlanTime()/1e9);
+        System.out.println("Total execution time: " + getTotalExecutionTime()/1e9);
+        System.out.println("Total time: " + (getTotalExecutionTime() + getTotalPlanTime())/1e9);
+        metrics.dump();
+    }
+
+    /**
+     * @return true once the townhall is destroyed or the agent has found there is no path
+     */
+    boolean isDone()
+    {
+        return townhallDestroyed || gaveUp;
+    }
+
+    boolean isTownhallDestroyed()
+    {
+        return townhallDestroyed;
+    }
+
+    long getTotalPlanTime()
+    {
+        return metrics.getPhaseNanos(PLAN_PHASE);
+    }
+
+    long getTotalExecutionTime()
+    {
+        return metrics.getPhaseNanos(EXECUTE_PHASE);
+    }
+
+    int getTotalReplans()
+    {
+        return totalReplans;
     }
 
     @Override
@@ -214,31 +315,25 @@ public class AstarAgent extends Agent {
      * @param currentPath
      * @return a boolean value to give the red/green light on whether a path should be replanned.
      */
-    private boolean shouldReplanPath(State.StateView state, History.HistoryView history, Stack<MapLocation> currentPath)
+    private boolean shouldReplanPath(State.StateView state, History.HistoryView history, PlannedPath currentPath)
     {
+        // no path was found last time, the enemy may have moved out of the way since
+        if(!currentPath.isFound()) return true;
+
         Unit.UnitView enemy = state.getUnit(enemyFootmanID);
         if(enemy == null) return false;
 
         // make sure the agent is within two tiles of the enemy
-        if(!currentPath.empty()) {
-            MapLocation currentPos = currentPath.lastElement();
+        if(!currentPath.isEmpty()) {
+            int currentPos = currentPath.peek();
             if(
-                    Math.abs(enemy.getXPosition() - currentPos.x) > 2
-                            || Math.abs(enemy.getYPosition() - currentPos.y) > 2
+                    Math.abs(enemy.getXPosition() - currentPath.x(currentPos)) > 2
+                            || Math.abs(enemy.getYPosition() - currentPath.y(currentPos)) > 2
             ) return false;
         }
 
         // check to see if the enemy lies on any part of the current planned path
-        ListIterator<MapLocation> iterator = currentPath.listIterator();
-        while(iterator.hasNext()) {
-            MapLocation location = iterator.next();
-
-            if(location.x == enemy.getXPosition() && location.y == enemy.getYPosition()) {
-                return true;
-            }
-        }
-
-        return false;
+        return currentPath.contains(enemy.getXPosition() + enemy.getYPosition() * state.getXExtent());
     }
 
     /**
@@ -246,9 +341,9 @@ public class AstarAgent extends Agent {
      * how to find units and resources in Sepia.
      *
      * @param state
-     * @return
+     * @return tile indices of the path in walking order, or null if there is none
      */
-    private Stack<MapLocation> findPath(State.StateView state)
+    private int[] findPath(State.StateView state)
     {
         Unit.UnitView townhallUnit = state.getUnit(townhallID);
         Unit.UnitView footmanUnit = state.getUnit(footmanID);
@@ -263,18 +358,22 @@ public class AstarAgent extends Agent {
             footmanLoc = new MapLocation(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition(), null, 0);
         }
 
-        // get resource locations
-        List<Integer> resourceIDs = state.getAllResourceIds();
-        Set<MapLocation> resourceLocations = new HashSet<MapLocation>();
-        for(Integer resourceID : resourceIDs)
-        {
-            ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
-
-            resourceLocations.add(new MapLocation(resource.getXPosition(), resource.getYPosition(), null, 0));
+        if(planner == Planner.INCREMENTAL) {
+            return incrementalSearch(state, startLoc, goalLoc, footmanLoc);
+        }
+        if(planner == Planner.HPA) {
+            return hierarchicalSearch(state, startLoc, goalLoc, footmanLoc);
         }
+        if(planner == Planner.FLOW) {
+            return flowFieldSearch(state, startLoc, goalLoc, footmanLoc);
+        }
+
+        // get resource locations, packed into one bit per tile
+        ObstacleGrid obstacles = ObstacleGrid.fromState(state);
 
-        return AstarSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, resourceLocations);
+        return AstarSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
     }
+
     /**
      * This is the method you will implement for the assignment. Your implementation
      * will use the A* algorithm to compute the optimum path from the start position to
@@ -282,11 +381,11 @@ public class AstarAgent extends Agent {
      *
      * Therefore your you need to find some possible adjacent steps which are in range
      * and are not trees or the enemy footman.
-     * Hint: Set<MapLocation> resourceLocations contains the locations of trees
+     * Hint: ObstacleGrid obstacles has a bit set for the location of every tree
      *
-     * You will return a Stack of positions with the top of the stack being the first space to move to
-     * and the bottom of the stack being the last space to move to. If there is no path to the townhall
-     * then return null from the method and the agent will print a message and do nothing.
+     * You will return an array of tile indices (x + y * xExtent) with the first entry being the first
+     * space to move to and the last entry being the last space to move to. If there is no path to the
+     * townhall then return null from the method and the agent will print a message and do nothing.
      * The code to execute the plan is provided for you in the middleStep method.
      *
      * As an example consider the following simple map
@@ -305,186 +404,188 @@ public class AstarAgent extends Agent {
      * yExtent would be 3 for this map with valid Y coordinates in the range of [0, 2]
      * y=0 is the top most row and y=2 is the bottom most row
      *
-     * resourceLocations would be {(0,1), (1,1), (2,1), (4,1)}
+     * obstacles would have the tiles {(0,1), (1,1), (2,1), (4,1)} blocked
      *
      * The path would be
      *
-     * (1,0)
-     * (2,0)
-     * (3,1)
-     * (2,2)
-     * (1,2)
+     * (1,0) = 1
+     * (2,0) = 2
+     * (3,1) = 8
+     * (2,2) = 12
+     * (1,2) = 11
      *
-     * Notice how the initial footman position and the townhall position are not included in the path stack
+     * Notice how the initial footman position and the townhall position are not included in the path
      *
      * @param start Starting position of the footman
      * @param goal MapLocation of the townhall
      * @param xExtent Width of the map
      * @param yExtent Height of the map
-     * @param resourceLocations Set of positions occupied by resources
-     * @return Stack of positions with top of stack representing the first move in plan.
+     * @param obstacles Bitmap of the positions occupied by resources
+     * @return tile indices with the first entry representing the first move in plan.
      */
-    private Stack<MapLocation> AstarSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent, MapLocation enemyFootmanLoc, Set<MapLocation> resourceLocations)
+    private int[] AstarSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent, MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
     {
-        // initialize stacks to track moves and path
-        Stack<MapLocation> bestPath = new Stack<>();
-        Stack<MapLocation> openList = new Stack<>();
-        Stack<MapLocation> closedList = new Stack<>();
-
-        boolean foundGoal = false;
-        MapLocation agentLoc = start;
-
-        // start the algorithm
-        openList.add(agentLoc);
-        do{
-            // add current position to closed list
-            closedList.add(agentLoc);
-            // all the adjacent squares to the player's current position.
-            MapLocation[] possibleMoves = getPossibleMoves(agentLoc);
-
-            MapLocation bestMove = null;
-
-            while(bestMove == null) {
-                // initialize the best heuristic value
-                float bestHeuristic = Float.MAX_VALUE;
-
-                // iterate through each possible move
-                for (MapLocation moveLoc : possibleMoves) {
-                    // check if the move is legal
-                    if(isLegal(moveLoc, xExtent, yExtent, enemyFootmanLoc, resourceLocations)) {
-                        // check if move is in closedList (already explored)
-                        if(!containsLocation(closedList, moveLoc)) {
-                            openList.add(moveLoc);
-                            // check for a better heuristic value and record it.
-                            if(heuristic(moveLoc, goal) < bestHeuristic) {
-                                bestHeuristic = heuristic(moveLoc, goal);
-                                bestMove = moveLoc;
-                            }
-                        }
-                    }
-                }
+        // the search buffers are sized to the map so only build them once
+        if(search == null) {
+            search = createPathfinder(planner, obstacles);
+        }
 
-                // check if backtracking is necessary
-                if(bestMove == null) {
-                    // remove the most recent step from the path
-                    if(!bestPath.isEmpty()) {
-                        bestPath.pop();
-                    }
-
-                    // move the explorer back a step
-                    if(!bestPath.isEmpty()) {
-                        agentLoc = bestPath.peek();
-                    } else {
-                        if(agentLoc != start) {
-                            agentLoc = start;
-                        } else {
-                            // if it tries to backtrack from the starting location, there can be no solution
-                            System.out.println("No valid path.");
-                            System.exit(0);
-                        }
-                    }
-                    // update the set of possible moves for the new explorer location
-                    possibleMoves = getPossibleMoves(agentLoc);
-                }
-            }
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.index(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        int[] cells = search.search(obstacles.index(start.x, start.y), obstacles.index(goal.x, goal.y),
+                cell -> isLegal(cell, enemyCell, obstacles));
 
-            // add to closed list
-            closedList.add(bestMove);
+        return checkPathFound(cells, enemyFootmanLoc);
+    }
 
-            // set agent's location to the best possible move at hand
-            agentLoc = bestMove;
+    /**
+     * Planners that keep state between turns (INCREMENTAL, HPA, FLOW) have no single-query
+     * form and get plain A*.
+     *
+     * @param planner the planner picked for the agent
+     * @param obstacles the trees of the map, used to size the search and build landmarks
+     * @return the single-query search used by AstarSearch for that planner
+     */
+    static GridPathfinder createPathfinder(Planner planner, ObstacleGrid obstacles)
+    {
+        if(planner == Planner.JPS) {
+            return new JumpPointSearch(obstacles.width, obstacles.height);
+        }
+        if(planner == Planner.ALT) {
+            return new GridAstar(obstacles.width, obstacles.height, LandmarkHeuristic.cached(obstacles,
+                    LandmarkHeuristic.DEFAULT_LANDMARKS, LandmarkHeuristic.DEFAULT_DIRECTORY));
+        }
+        return new GridAstar(obstacles.width, obstacles.height);
+    }
 
-            // clear open list except for the action taken
-            openList.clear();
-            openList.add(agentLoc);
+    /**
+     * Plans with the D* Lite search kept from earlier turns. The trees are read from the
+     * state once, after that only the moves of the footman and the enemy footman are fed
+     * in so the search repairs just the part of the map they touched.
+     *
+     * @param state
+     * @param start Current position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Current position of the enemy footman, or null if there is none
+     * @return tile indices with the first entry representing the first move in plan.
+     */
+    private int[] incrementalSearch(State.StateView state, MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int xExtent = state.getXExtent();
+        int startCell = start.x + start.y * xExtent;
 
-            // check if goal state was found or add action taken to path
-            if(agentLoc.x == goal.x && agentLoc.y == goal.y){
-                foundGoal = true;
-            }else{
-                bestPath.add(agentLoc);
-            }
-        } while(!foundGoal && !openList.empty());
+        if(incremental == null) {
+            incremental = new DStarLite(ObstacleGrid.fromState(state), startCell, goal.x + goal.y * xExtent);
+        } else {
+            incremental.moveStart(startCell);
+        }
 
-        // reverse the stack to better display the order of moves
-        Stack<MapLocation> result = new Stack<MapLocation>();
-        while (!bestPath.isEmpty()) {
-            result.push(bestPath.pop());
+        int enemyCell = enemyFootmanLoc == null ? -1 : enemyFootmanLoc.x + enemyFootmanLoc.y * xExtent;
+        if(enemyCell != incrementalEnemyCell) {
+            incremental.setBlocked(incrementalEnemyCell, false);
+            incremental.setBlocked(enemyCell, true);
+            incrementalEnemyCell = enemyCell;
         }
 
-        // return discovered path
-        return result;
+        return checkPathFound(incremental.findPath(), enemyFootmanLoc);
     }
 
     /**
-     * Helper function to get new possible moves.
+     * Plans over the cluster abstraction built on the first call. Later calls diff the
+     * current trees and enemy footman against it and only rebuild the clusters that changed.
      *
-     * @param agentLoc
-     * @return all possible moves on the map.
+     * @param state
+     * @param start Current position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Current position of the enemy footman, or null if there is none
+     * @return tile indices with the first entry representing the first move in plan.
      */
-    private MapLocation[] getPossibleMoves(MapLocation agentLoc) {
-        MapLocation[] possibleMoves = new MapLocation[8];
-        possibleMoves[0] = new MapLocation(agentLoc.x + 1, agentLoc.y + 1, agentLoc, 0);
-        possibleMoves[1] = new MapLocation(agentLoc.x + 1, agentLoc.y, agentLoc, 0);
-        possibleMoves[2] = new MapLocation(agentLoc.x + 1, agentLoc.y - 1, agentLoc, 0);
-        possibleMoves[3] = new MapLocation(agentLoc.x, agentLoc.y + 1, agentLoc, 0);
-        possibleMoves[4] = new MapLocation(agentLoc.x, agentLoc.y - 1, agentLoc, 0);
-        possibleMoves[5] = new MapLocation(agentLoc.x - 1, agentLoc.y + 1, agentLoc, 0);
-        possibleMoves[6] = new MapLocation(agentLoc.x - 1, agentLoc.y, agentLoc, 0);
-        possibleMoves[7] = new MapLocation(agentLoc.x - 1, agentLoc.y - 1, agentLoc, 0);
-        return possibleMoves;
+    private int[] hierarchicalSearch(State.StateView state, MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        ObstacleGrid obstacles = ObstacleGrid.fromState(state);
+        if(enemyFootmanLoc != null) {
+            obstacles.block(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        }
+
+        if(hierarchical == null) {
+            hierarchical = new HierarchicalPathfinder(obstacles, clusterSize);
+        } else {
+            hierarchical.update(obstacles);
+        }
+
+        int[] cells = hierarchical.search(obstacles.index(start.x, start.y), obstacles.index(goal.x, goal.y));
+        return checkPathFound(cells, enemyFootmanLoc);
     }
 
     /**
-     * Helper function to check if a certain location is in the closedList
+     * Reads the path off the distance field to the townhall. The field over the trees is
+     * cached per map, each turn only the enemy footman's old and new tiles are fed in so
+     * the field is repaired around them instead of recomputed.
      *
-     * @param closedList
-     * @param moveLoc
-     * @return a boolean value representing whether a move is possible.
+     * @param state
+     * @param start Current position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Current position of the enemy footman, or null if there is none
+     * @return tile indices with the first entry representing the first move in plan.
      */
-    private boolean containsLocation(Stack<MapLocation> closedList, MapLocation moveLoc) {
-        ListIterator<MapLocation> iterator = closedList.listIterator();
-        while(iterator.hasNext()){
-            MapLocation loc = iterator.next();
-            if(loc.x == moveLoc.x && loc.y == moveLoc.y){
-                return true;
-            }
+    private int[] flowFieldSearch(State.StateView state, MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int xExtent = state.getXExtent();
+        int goalCell = goal.x + goal.y * xExtent;
+
+        if(flowField == null || flowField.getGoal() != goalCell) {
+            flowField = new FlowField(ObstacleGrid.fromState(state), goalCell);
+            flowFieldEnemyCell = -1;
+        }
+
+        int enemyCell = enemyFootmanLoc == null ? -1 : enemyFootmanLoc.x + enemyFootmanLoc.y * xExtent;
+        if(enemyCell != flowFieldEnemyCell) {
+            flowField.setBlocked(flowFieldEnemyCell, false);
+            flowField.setBlocked(enemyCell, true);
+            flowFieldEnemyCell = enemyCell;
         }
-        return false;
+
+        return checkPathFound(flowField.path(start.x + start.y * xExtent), enemyFootmanLoc);
     }
 
     /**
-     * Search heuristic is the shortest straight line path to the goal.
+     * Reports a failed plan. Gives up on the episode when nothing on the map can move out
+     * of the way, otherwise the null path makes shouldReplanPath try again next turn.
      *
-     * @param agentLoc
-     * @param goal
-     * @return a float distance representing the shortest straight line path.
+     * @param cells tiles in walking order, or null if no path was found
+     * @param enemyFootmanLoc position of the enemy footman, used to decide whether to keep trying
+     * @return the same tiles
      */
-    private float heuristic(MapLocation agentLoc, MapLocation goal){
-        float xPath = (float) Math.abs(agentLoc.x - goal.x);
-        float yPath = (float) Math.abs(agentLoc.y - goal.y);
-        return Math.max(xPath, yPath);
+    private int[] checkPathFound(int[] cells, MapLocation enemyFootmanLoc)
+    {
+        if(cells == null) {
+            if(!headless) {
+                System.out.println("No valid path.");
+            }
+
+            // only a moving enemy footman can open the map back up, otherwise give up
+            if(enemyFootmanLoc == null) {
+                if(!headless) {
+                    System.exit(0);
+                }
+                gaveUp = true;
+            }
+        }
+
+        return cells;
     }
 
     /**
      * A helper function is created to check whether a particular move can be made.
+     * Bounds are already handled by the search, so this is a single bit test plus
+     * a check against the enemy footman.
      *
-     * @param moveLoc
-     * @param xExtent
-     * @param yExtent
-     * @param enemyFootmanLoc
-     * @param resourceLocations
+     * @param cell flat index of the tile to move to
+     * @param enemyCell flat index of the enemy footman, or -1 if there is none
+     * @param obstacles
      * @return a boolean value representing the legality of a possible move.
      */
-    private boolean isLegal(MapLocation moveLoc, int xExtent, int yExtent, MapLocation enemyFootmanLoc, Set<MapLocation> resourceLocations){
-        if(moveLoc == null) return false;
-        if(moveLoc.x < 0 || moveLoc.x > xExtent) return false;
-        if(moveLoc.y < 0 || moveLoc.y > yExtent) return false;
-        if(enemyFootmanLoc != null && moveLoc.x == enemyFootmanLoc.x && moveLoc.y == enemyFootmanLoc.y) return false;
-        for (MapLocation resLoc : resourceLocations) {
-            if (moveLoc.x == resLoc.x && moveLoc.y == resLoc.y) return false;
-        }
-        return true;
+    private boolean isLegal(int cell, int enemyCell, ObstacleGrid obstacles){
+        return cell != enemyCell && !obstacles.isBlocked(cell);
     }
 
     /**
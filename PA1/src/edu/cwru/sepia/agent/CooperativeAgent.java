@@ -0,0 +1,227 @@
+package edu.cwru.sepia.agent;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.environment.model.history.History;
+import edu.cwru.sepia.environment.model.state.State;
+import edu.cwru.sepia.environment.model.state.Unit;
+import edu.cwru.sepia.util.Direction;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Sends every footman the player controls to the enemy townhall, planning all of them
+ * together with a CooperativePathfinder so they do not walk into each other.
+ *
+ * The optional agent argument is the planning window in turns (default 8). The batch is
+ * replanned every half window, or sooner when a footman is not where its plan said it
+ * would be.
+ */
+public class CooperativeAgent extends Agent {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_WINDOW = 8;
+
+    private final int window;
+
+    private List<Integer> footmanIDs = new ArrayList<Integer>();
+    private int townhallID = -1;
+
+    private ObstacleGrid obstacles;
+    private CooperativePathfinder pathfinder;
+
+    private int[] planStarts;
+    private int[][] plans;
+    private int planTurn;
+
+    private static final int PLAN_PHASE = 0;
+    private static final int EXECUTE_PHASE = 1;
+    private final AgentMetrics metrics = new AgentMetrics("CooperativeAgent", "plan", "execute");
+    private int totalReplans = 0;
+
+    public CooperativeAgent(int playernum)
+    {
+        this(playernum, new String[0]);
+    }
+
+    public CooperativeAgent(int playernum, String[] args)
+    {
+        super(playernum);
+
+        window = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_WINDOW;
+
+        System.out.println("Constructed CooperativeAgent (window " + window + ")");
+    }
+
+    @Override
+    public Map<Integer, Action> initialStep(State.StateView newstate, History.HistoryView statehistory) {
+        for(Unit.UnitView unit : newstate.getUnits(playernum))
+        {
+            if(unit.getTemplateView().getName().equals("Footman")) {
+                footmanIDs.add(unit.getID());
+            }
+        }
+
+        for(Integer playerNum : newstate.getPlayerNumbers())
+        {
+            if(playerNum == playernum) continue;
+            for(Unit.UnitView unit : newstate.getUnits(playerNum))
+            {
+                if(unit.getTemplateView().getName().toLowerCase().equals("townhall")) {
+                    townhallID = unit.getID();
+                }
+            }
+        }
+
+        if(footmanIDs.isEmpty() || townhallID == -1) {
+            System.err.println("Error: Couldn't find footmen and an enemy townhall");
+            return null;
+        }
+
+        obstacles = ObstacleGrid.fromState(newstate);
+        pathfinder = new CooperativePathfinder(obstacles, window);
+
+        return middleStep(newstate, statehistory);
+    }
+
+    @Override
+    public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
+        long startTime = metrics.start();
+        long planTime = 0;
+
+        Map<Integer, Action> actions = new HashMap<Integer, Action>();
+
+        Unit.UnitView townhallUnit = newstate.getUnit(townhallID);
+        if(townhallUnit == null) {
+            return actions;
+        }
+        int townhallX = townhallUnit.getXPosition();
+        int townhallY = townhallUnit.getYPosition();
+
+        // forget footmen that died, their plans go with them at the next replan
+        Iterator<Integer> iterator = footmanIDs.iterator();
+        while(iterator.hasNext()) {
+            if(newstate.getUnit(iterator.next()) == null) {
+                iterator.remove();
+                plans = null;
+            }
+        }
+
+        if(shouldReplan(newstate, townhallX, townhallY)) {
+            long planStartTime = metrics.start();
+            plan(newstate, obstacles.index(townhallX, townhallY));
+            planTime = metrics.stop(PLAN_PHASE, planStartTime);
+            totalReplans++;
+        }
+
+        int step = newstate.getTurnNumber() - planTurn;
+        for(int i = 0; i < footmanIDs.size(); i++)
+        {
+            int footmanID = footmanIDs.get(i);
+            Unit.UnitView footman = newstate.getUnit(footmanID);
+            int footmanX = footman.getXPosition();
+            int footmanY = footman.getYPosition();
+
+            if(plans[i] != null && step < plans[i].length) {
+                int next = plans[i][step];
+                int xDiff = next % obstacles.width - footmanX;
+                int yDiff = next / obstacles.width - footmanY;
+
+                // a repeated tile means wait this turn
+                if(xDiff != 0 || yDiff != 0) {
+                    actions.put(footmanID, Action.createPrimitiveMove(footmanID, Direction.getDirection(xDiff, yDiff)));
+                }
+            } else if(Math.abs(footmanX - townhallX) <= 1 && Math.abs(footmanY - townhallY) <= 1) {
+                actions.put(footmanID, Action.createPrimitiveAttack(footmanID, townhallID));
+            }
+        }
+
+        metrics.add(EXECUTE_PHASE, metrics.stepFinished(startTime) - planTime);
+        return actions;
+    }
+
+    @Override
+    public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
+        System.out.println("Total turns: " + newstate.getTurnNumber());
+        System.out.println("Total replans: " + totalReplans);
+        long planTime = metrics.getPhaseNanos(PLAN_PHASE);
+        long executionTime = metrics.getPhaseNanos(EXECUTE_PHASE);
+        System.out.println("Total planning time: " + planTime/1e9);
+        System.out.println("Total execution time: " + executionTime/1e9);
+        System.out.println("Total time: " + (executionTime + planTime)/1e9);
+        metrics.dump();
+    }
+
+    @Override
+    public void savePlayerData(OutputStream os) {
+
+    }
+
+    @Override
+    public void loadPlayerData(InputStream is) {
+
+    }
+
+    /**
+     * Replans every half window, and whenever a footman is off its plan or has run out
+     * of plan without reaching the townhall.
+     */
+    private boolean shouldReplan(State.StateView state, int townhallX, int townhallY)
+    {
+        if(plans == null) return true;
+
+        int step = state.getTurnNumber() - planTurn;
+        if(step >= window / 2) return true;
+
+        for(int i = 0; i < footmanIDs.size(); i++)
+        {
+            Unit.UnitView footman = state.getUnit(footmanIDs.get(i));
+            int cell = obstacles.index(footman.getXPosition(), footman.getYPosition());
+
+            int[] plan = plans[i];
+            if(plan == null) continue;
+
+            int expected = step == 0 || plan.length == 0 ? planStarts[i] : plan[Math.min(step, plan.length) - 1];
+            if(cell != expected) return true;
+
+            boolean atTownhall = Math.abs(footman.getXPosition() - townhallX) <= 1
+                    && Math.abs(footman.getYPosition() - townhallY) <= 1;
+            if(step >= plan.length && !atTownhall) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Plans every footman in one batch. Enemy units other than the townhall are treated
+     * as blocked for this window.
+     */
+    private void plan(State.StateView state, int townhallCell)
+    {
+        BitSet enemyCells = new BitSet(obstacles.width * obstacles.height);
+        for(Integer playerNum : state.getPlayerNumbers())
+        {
+            if(playerNum == playernum) continue;
+            for(Unit.UnitView unit : state.getUnits(playerNum))
+            {
+                if(unit.getID() != townhallID) {
+                    enemyCells.set(obstacles.index(unit.getXPosition(), unit.getYPosition()));
+                }
+            }
+        }
+
+        planStarts = new int[footmanIDs.size()];
+        int[] goals = new int[footmanIDs.size()];
+        for(int i = 0; i < footmanIDs.size(); i++)
+        {
+            Unit.UnitView footman = state.getUnit(footmanIDs.get(i));
+            planStarts[i] = obstacles.index(footman.getXPosition(), footman.getYPosition());
+            goals[i] = townhallCell;
+        }
+
+        plans = pathfinder.planAll(planStarts, goals, cell -> !obstacles.isBlocked(cell) && !enemyCells.get(cell));
+        planTurn = state.getTurnNumber();
+    }
+}
@@ -0,0 +1,312 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Windowed Hierarchical Cooperative A* (WHCA*) for planning many units at once.
+ *
+ * Units are planned one after another in priority order. Each one runs a space-time A*
+ * over (tile, turn) for the next window turns, where staying put is a move like any other,
+ * and then reserves every tile it will stand on in a shared reservation table so the units
+ * planned after it route around it instead of walking into it. Head-on swaps between two
+ * units are ruled out as well, and nobody steps onto a unit's tile on the first turn
+ * before that unit has been planned, since it might not be able to move out of the way.
+ *
+ * Past the end of the window a unit's remaining cost is taken from a true-distance field
+ * (breadth-first from the goal over the trees, ignoring units). Fields are cached per goal
+ * and shared by every unit heading there and by every later batch.
+ */
+class CooperativePathfinder {
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** returned by planUnit when the unit cannot even wait, compared by reference */
+    private static final int[] BOXED_IN = new int[0];
+
+    private final ObstacleGrid obstacles;
+    private final int size;
+    private final int window;
+
+    private final Map<Integer, int[]> distanceFields = new HashMap<Integer, int[]>();
+    private final LongIntHashMap reservations = new LongIntHashMap(256);
+    // the unit standing on each tile that has not been planned yet, -1 for none
+    private final int[] standing;
+
+    // nodes of the current space-time search, looked up by (turn, tile)
+    private final LongIntHashMap nodeIndex = new LongIntHashMap(256);
+    private int[] nodeCell = new int[256];
+    private int[] nodeTime = new int[256];
+    private int[] nodeG = new int[256];
+    private int[] nodeParent = new int[256];
+    private int nodeCount;
+    private final BitSet closed = new BitSet();
+    private final NodeHeap open = new NodeHeap(64);
+
+    private int nodesExpanded;
+
+    /**
+     * @param obstacles the static blocked tiles the distance fields are computed over
+     * @param window number of turns each unit plans and reserves ahead
+     */
+    CooperativePathfinder(ObstacleGrid obstacles, int window)
+    {
+        this.obstacles = obstacles;
+        this.size = obstacles.width * obstacles.height;
+        this.window = window;
+
+        standing = new int[size];
+        Arrays.fill(standing, -1);
+    }
+
+    /**
+     * Plans the next window of moves for every unit, in the order given.
+     *
+     * @param starts tile of each unit
+     * @param goals tile each unit is heading for, always treated as reachable
+     * @param passable test for tiles that are open this turn, not counting the units being planned
+     * @return for each unit the tile it should be on after 1, 2, ... turns. A unit waiting
+     *         repeats its tile, a unit that reaches its goal stops one tile short of it and
+     *         its entry is null if the goal cannot be reached at all
+     */
+    int[][] planAll(int[] starts, int[] goals, IntPredicate passable)
+    {
+        nodesExpanded = 0;
+
+        int[] order = new int[starts.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        int[][] plans = new int[starts.length][];
+        for(int attempt = 0; attempt <= starts.length; attempt++) {
+            int stuck = planInOrder(order, starts, goals, passable, plans);
+            if(stuck < 0) break;
+
+            // a unit that could not even wait in place had its tile taken by someone planned
+            // earlier, so let it go first and plan the batch again
+            int position = 0;
+            while(order[position] != stuck) position++;
+            System.arraycopy(order, 0, order, 1, position);
+            order[0] = stuck;
+        }
+
+        AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED, nodesExpanded);
+        return plans;
+    }
+
+    /**
+     * @return a unit that was boxed in by the reservations of earlier units, or -1
+     */
+    private int planInOrder(int[] order, int[] starts, int[] goals, IntPredicate passable, int[][] plans)
+    {
+        reservations.clear();
+
+        // the starting tiles, for the swap check and for units planned before their owners
+        for(int unit = 0; unit < starts.length; unit++) {
+            reservations.put(key(starts[unit], 0), unit);
+            standing[starts[unit]] = unit;
+        }
+
+        int stuck = -1;
+        for(int unit : order) {
+            plans[unit] = planUnit(unit, starts[unit], goals[unit], passable);
+            if(plans[unit] == BOXED_IN) {
+                if(stuck < 0 && unit != order[0]) stuck = unit;
+                plans[unit] = new int[0];
+            }
+
+            // a unit with no way to its goal still stands where it is
+            reserve(unit, starts[unit], plans[unit] == null ? new int[0] : plans[unit]);
+            standing[starts[unit]] = -1;
+        }
+        return stuck;
+    }
+
+    /**
+     * @return the number of space-time nodes expanded by the last batch
+     */
+    int getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    /**
+     * Drops the cached distance fields, needed after the static obstacles change.
+     */
+    void obstaclesChanged()
+    {
+        distanceFields.clear();
+    }
+
+    private long key(int cell, int time)
+    {
+        return (long) time * size + cell;
+    }
+
+    /**
+     * Reserves the planned tiles, and the final tile for the rest of the window since the
+     * unit will still be standing there.
+     */
+    private void reserve(int unit, int start, int[] plan)
+    {
+        int cell = start;
+        for(int time = 1; time <= window; time++) {
+            if(time <= plan.length) cell = plan[time - 1];
+            reservations.put(key(cell, time), unit);
+        }
+    }
+
+    private int[] planUnit(int unit, int start, int goal, IntPredicate passable)
+    {
+        int[] distance = distanceField(goal);
+        if(distance[start] == UNREACHABLE) return null;
+        if(start == goal) return new int[0];
+
+        nodeIndex.clear();
+        closed.clear();
+        open.clear();
+        nodeCount = 0;
+
+        int startNode = addNode(start, 0, 0, -1);
+        open.push(startNode, NodeHeap.key(distance[start], distance[start]));
+
+        int width = obstacles.width;
+        while(!open.isEmpty()) {
+            int node = open.pop();
+            if(closed.get(node)) continue;
+
+            int cell = nodeCell[node];
+            int time = nodeTime[node];
+            if(cell == goal) {
+                // the unit stops next to the goal, which only works if nobody needs that tile later
+                int last = nodeParent[node];
+                if(canStay(unit, nodeCell[last], nodeTime[last])) return buildPlan(last);
+                continue;
+            }
+            if(time == window) return buildPlan(node);
+
+            closed.set(node);
+            nodesExpanded++;
+
+            int x = cell % width;
+            int y = cell / width;
+            for(int i = -1; i < 8; i++) {
+                // i == -1 is waiting on the current tile
+                int nx = i < 0 ? x : x + GridAstar.DX[i];
+                int ny = i < 0 ? y : y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = nx + ny * width;
+                if(next != goal && !passable.test(next)) continue;
+                if(distance[next] == UNREACHABLE || !isFree(unit, cell, next, time)) continue;
+
+                int g = nodeG[node] + 1;
+                long stateKey = key(next, time + 1);
+                int existing = nodeIndex.get(stateKey);
+                if(existing >= 0 && (closed.get(existing) || g >= nodeG[existing])) continue;
+
+                int child;
+                if(existing >= 0) {
+                    child = existing;
+                    nodeG[child] = g;
+                    nodeParent[child] = node;
+                } else {
+                    child = addNode(next, time + 1, g, node);
+                }
+                open.push(child, NodeHeap.key(g + distance[next], distance[next]));
+            }
+        }
+
+        return BOXED_IN;
+    }
+
+    /**
+     * A move from cell to next between time and time + 1 is free when no other unit holds
+     * next at time + 1, no unit still to be planned is standing on it for the first move,
+     * and the move is not a swap with a unit coming the other way.
+     */
+    private boolean isFree(int unit, int cell, int next, int time)
+    {
+        int holder = reservations.get(key(next, time + 1));
+        if(holder >= 0 && holder != unit) return false;
+        if(time == 0 && standing[next] >= 0 && standing[next] != unit) return false;
+
+        int oncoming = reservations.get(key(next, time));
+        return oncoming < 0 || oncoming == unit || reservations.get(key(cell, time + 1)) != oncoming;
+    }
+
+    private boolean canStay(int unit, int cell, int fromTime)
+    {
+        for(int time = fromTime + 1; time <= window; time++) {
+            int holder = reservations.get(key(cell, time));
+            if(holder >= 0 && holder != unit) return false;
+        }
+        return true;
+    }
+
+    private int addNode(int cell, int time, int g, int parent)
+    {
+        if(nodeCount == nodeCell.length) {
+            int capacity = nodeCount * 2;
+            nodeCell = Arrays.copyOf(nodeCell, capacity);
+            nodeTime = Arrays.copyOf(nodeTime, capacity);
+            nodeG = Arrays.copyOf(nodeG, capacity);
+            nodeParent = Arrays.copyOf(nodeParent, capacity);
+        }
+
+        nodeCell[nodeCount] = cell;
+        nodeTime[nodeCount] = time;
+        nodeG[nodeCount] = g;
+        nodeParent[nodeCount] = parent;
+        nodeIndex.put(key(cell, time), nodeCount);
+        return nodeCount++;
+    }
+
+    private int[] buildPlan(int last)
+    {
+        int[] plan = new int[nodeTime[last]];
+        for(int node = last; nodeTime[node] > 0; node = nodeParent[node]) {
+            plan[nodeTime[node] - 1] = nodeCell[node];
+        }
+        return plan;
+    }
+
+    /**
+     * Breadth-first distance from every tile to the goal over the static obstacles.
+     */
+    private int[] distanceField(int goal)
+    {
+        int[] distance = distanceFields.get(goal);
+        if(distance != null) return distance;
+
+        distance = new int[size];
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[size];
+        int head = 0, tail = 0;
+
+        distance[goal] = 0;
+        queue[tail++] = goal;
+        while(head < tail) {
+            int cell = queue[head++];
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(distance[next] != UNREACHABLE || obstacles.isBlocked(next)) continue;
+                distance[next] = distance[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+
+        distanceFields.put(goal, distance);
+        return distance;
+    }
+}
@@ -0,0 +1,251 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Incremental planner (D* Lite) that keeps its search state between turns.
+ *
+ * The search runs backwards from the goal, so g[] holds the cost from each tile to the goal.
+ * When the start moves or a tile becomes blocked or free only the tiles whose costs are
+ * affected get reopened, so repairing the plan costs roughly the size of the change
+ * instead of a whole new search.
+ *
+ * Keys are packed as k1 in the high 32 bits and k2 in the low 32 bits so a plain
+ * NodeHeap orders them lexicographically. Entries that go stale are left in the heap
+ * and skipped when they reach the top.
+ */
+class DStarLite {
+
+    private static final int INFINITY = 1 << 28;
+
+    private final ObstacleGrid obstacles;
+    private final int width;
+    private final int goal;
+
+    private final int[] g;
+    private final int[] rhs;
+    private final long[] openKey;
+    private final BitSet inOpen;
+    private final NodeHeap open;
+
+    private int start;
+    private int keyModifier = 0;
+    private int nodesExpanded;
+
+    /**
+     * @param obstacles blocked tiles, kept and updated by this planner
+     * @param start index of the starting tile
+     * @param goal index of the goal tile, always treated as reachable
+     */
+    DStarLite(ObstacleGrid obstacles, int start, int goal)
+    {
+        this.obstacles = obstacles;
+        this.width = obstacles.width;
+        this.start = start;
+        this.goal = goal;
+
+        int size = obstacles.width * obstacles.height;
+        g = new int[size];
+        rhs = new int[size];
+        openKey = new long[size];
+        inOpen = new BitSet(size);
+        open = new NodeHeap(64);
+
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+
+        rhs[goal] = 0;
+        insert(goal);
+    }
+
+    /**
+     * Moves the start of the search, the existing costs stay valid since they are
+     * measured to the goal and only the heuristic offset changes.
+     */
+    void moveStart(int newStart)
+    {
+        keyModifier += heuristic(start, newStart);
+        start = newStart;
+    }
+
+    /**
+     * Blocks or frees a tile and reopens the tiles whose cost could change because of it.
+     */
+    void setBlocked(int cell, boolean blocked)
+    {
+        if(cell < 0 || obstacles.isBlocked(cell) == blocked) return;
+
+        int x = cell % width;
+        int y = cell / width;
+        if(blocked) {
+            obstacles.block(x, y);
+        } else {
+            obstacles.unblock(x, y);
+        }
+
+        updateVertex(cell);
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(obstacles.inBounds(nx, ny)) updateVertex(obstacles.index(nx, ny));
+        }
+    }
+
+    /**
+     * Repairs the search and walks the cheapest path from the start.
+     *
+     * @return the tiles between start and goal in walking order (neither end included),
+     *         or null if the goal cannot be reached
+     */
+    int[] findPath()
+    {
+        nodesExpanded = 0;
+        computeShortestPath();
+        AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED, nodesExpanded);
+
+        if(g[start] >= INFINITY) return null;
+
+        int[] path = new int[g[start] > 0 ? g[start] - 1 : 0];
+        int current = start;
+        for(int i = 0; i < path.length; i++) {
+            current = bestSuccessor(current);
+            if(current < 0 || current == goal) return Arrays.copyOf(path, i);
+            path[i] = current;
+        }
+        return path;
+    }
+
+    /**
+     * @return the number of tiles expanded by the last repair
+     */
+    int getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    private void computeShortestPath()
+    {
+        while(true) {
+            discardStale();
+            if(open.isEmpty()) break;
+
+            long startKey = key(start);
+            if(open.peekKey() >= startKey && rhs[start] == g[start]) break;
+
+            long oldKey = open.peekKey();
+            int u = open.pop();
+            inOpen.clear(u);
+            nodesExpanded++;
+
+            long newKey = key(u);
+            if(oldKey < newKey) {
+                insert(u);
+            } else if(g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                updateNeighbours(u);
+            } else {
+                g[u] = INFINITY;
+                updateVertex(u);
+                updateNeighbours(u);
+            }
+        }
+    }
+
+    private void updateNeighbours(int cell)
+    {
+        int x = cell % width;
+        int y = cell / width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(obstacles.inBounds(nx, ny)) updateVertex(obstacles.index(nx, ny));
+        }
+    }
+
+    private void updateVertex(int cell)
+    {
+        if(cell != goal) {
+            rhs[cell] = isBlocked(cell) ? INFINITY : bestSuccessorCost(cell);
+        }
+
+        inOpen.clear(cell);
+        if(g[cell] != rhs[cell]) insert(cell);
+    }
+
+    /**
+     * One step look-ahead, the cheapest cost to the goal through a walkable neighbour.
+     */
+    private int bestSuccessorCost(int cell)
+    {
+        int best = INFINITY;
+        int x = cell % width;
+        int y = cell / width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int next = obstacles.index(nx, ny);
+            if(isBlocked(next) || g[next] >= INFINITY) continue;
+            best = Math.min(best, g[next] + 1);
+        }
+        return best;
+    }
+
+    private int bestSuccessor(int cell)
+    {
+        int best = -1;
+        int bestCost = INFINITY;
+        int x = cell % width;
+        int y = cell / width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int next = obstacles.index(nx, ny);
+            if(isBlocked(next) || g[next] >= bestCost) continue;
+            best = next;
+            bestCost = g[next];
+        }
+        return best;
+    }
+
+    private boolean isBlocked(int cell)
+    {
+        return cell != goal && obstacles.isBlocked(cell);
+    }
+
+    private void insert(int cell)
+    {
+        long key = key(cell);
+        openKey[cell] = key;
+        inOpen.set(cell);
+        open.push(cell, key);
+    }
+
+    /**
+     * Pops heap entries for tiles that left the open set or were pushed again with a newer key.
+     */
+    private void discardStale()
+    {
+        while(!open.isEmpty()) {
+            int top = open.peek();
+            if(inOpen.get(top) && openKey[top] == open.peekKey()) return;
+            open.pop();
+        }
+    }
+
+    private long key(int cell)
+    {
+        int k2 = Math.min(g[cell], rhs[cell]);
+        int k1 = k2 + heuristic(start, cell) + keyModifier;
+        return ((long) k1 << 32) | k2;
+    }
+
+    private int heuristic(int a, int b)
+    {
+        return Math.max(Math.abs(a % width - b % width), Math.abs(a / width - b / width));
+    }
+}
@@ -0,0 +1,387 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Distance field toward a single goal tile, for when every path a unit plans ends at the
+ * same place (the enemy townhall) and only the start and a few moving blockers change.
+ *
+ * One breadth-first search from the goal gives every open tile its move count to the goal,
+ * after that the next step from any tile is whichever neighbour is one move closer and a
+ * whole path is just those steps followed down to the goal. Fields over the static trees
+ * of the last CACHED_FIELDS maps and goals used are cached, so later episodes on the same
+ * map copy instead of search.
+ *
+ * Blocking or unblocking a tile repairs only the tiles whose distance it changes: a block
+ * raises the tiles that were routed through it and have no other neighbour as close to the
+ * goal, then lowers them again from their unaffected border. An unblock is a wave that
+ * only spreads while it shortens distances.
+ */
+class FlowField {
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    static final int CACHED_FIELDS = 16;
+
+    // static fields by map fingerprint and goal, least recently used first, never handed
+    // out without copying
+    private static final Map<Long, CachedField> CACHE = new LinkedHashMap<Long, CachedField>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedField> eldest)
+        {
+            return size() > CACHED_FIELDS;
+        }
+    };
+
+    /**
+     * A cached field with the trees and goal it was built for, checked on every hit since
+     * two maps may share a fingerprint.
+     */
+    private static final class CachedField {
+        final ObstacleGrid obstacles;
+        final int goal;
+        final int[] distance;
+
+        CachedField(ObstacleGrid obstacles, int goal, int[] distance)
+        {
+            this.obstacles = obstacles;
+            this.goal = goal;
+            this.distance = distance;
+        }
+    }
+
+    private final ObstacleGrid obstacles;
+    private final int goal;
+    private final int[] distance;
+    private final long[] blockers;
+
+    private final int[] queue;
+    private final boolean[] affected;
+    private final NodeHeap open = new NodeHeap(64);
+
+    private int tilesRepaired;
+
+    /**
+     * @param obstacles the static trees, not modified
+     * @param goal the tile every path leads to, treated as open even if blocked
+     */
+    FlowField(ObstacleGrid obstacles, int goal)
+    {
+        this.obstacles = obstacles;
+        this.goal = goal;
+
+        int size = obstacles.width * obstacles.height;
+        blockers = new long[(size + 63) >>> 6];
+        queue = new int[size];
+        affected = new boolean[size];
+
+        long key = obstacles.fingerprint() * 31 + goal;
+        CachedField cached;
+        synchronized(CACHE) {
+            cached = CACHE.get(key);
+        }
+        if(cached == null || cached.goal != goal || !cached.obstacles.sameTiles(obstacles)) {
+            cached = new CachedField(obstacles.copy(), goal, build());
+            synchronized(CACHE) {
+                CACHE.put(key, cached);
+            }
+        }
+        distance = Arrays.copyOf(cached.distance, size);
+    }
+
+    int getGoal()
+    {
+        return goal;
+    }
+
+    /**
+     * @return moves from the tile to the goal around the current blockers, or UNREACHABLE
+     */
+    int distance(int cell)
+    {
+        return distance[cell];
+    }
+
+    /**
+     * @return the neighbour one move closer to the goal, the goal itself when adjacent,
+     *         or -1 if the goal cannot be reached from the tile
+     */
+    int nextStep(int cell)
+    {
+        int d = distance[cell];
+        if(d == UNREACHABLE || d == 0) return -1;
+
+        int x = cell % obstacles.width;
+        int y = cell / obstacles.width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int next = obstacles.index(nx, ny);
+            if(distance[next] == d - 1) return next;
+        }
+        return -1;
+    }
+
+    /**
+     * @param start tile the unit is on, it need not be open itself
+     * @return the tiles between start and the goal in walking order, neither end included,
+     *         or null if the goal cannot be reached
+     */
+    int[] path(int start)
+    {
+        int d = startDistance(start);
+        if(d == UNREACHABLE) return null;
+        if(d == 0) return new int[0];
+
+        int[] cells = new int[d - 1];
+        int cell = firstStep(start, d);
+        for(int i = 0; i < cells.length; i++) {
+            cells[i] = cell;
+            cell = nextStep(cell);
+        }
+        return cells;
+    }
+
+    /**
+     * Marks a tile as blocked or open on top of the static trees and repairs the field.
+     * Trees and the goal cannot be changed, -1 is ignored so callers can pass the position
+     * of a unit that is not there.
+     *
+     * @param cell tile index
+     * @param blocked true if the tile should be treated as an obstacle
+     */
+    void setBlocked(int cell, boolean blocked)
+    {
+        if(cell < 0 || cell == goal || obstacles.isBlocked(cell) || isBlocked(cell) == blocked) return;
+
+        if(blocked) {
+            blockers[cell >>> 6] |= 1L << cell;
+            raise(cell);
+        } else {
+            blockers[cell >>> 6] &= ~(1L << cell);
+            lower(cell);
+        }
+    }
+
+    /**
+     * @return the number of tiles whose distance the last setBlocked call recomputed
+     */
+    int getTilesRepaired()
+    {
+        return tilesRepaired;
+    }
+
+    private boolean isBlocked(int cell)
+    {
+        return cell != goal && (obstacles.isBlocked(cell) || (blockers[cell >>> 6] & (1L << cell)) != 0);
+    }
+
+    /**
+     * A start tile may hold the unit itself, so its distance is taken from its neighbours.
+     */
+    private int startDistance(int start)
+    {
+        if(start == goal) return 0;
+
+        int best = UNREACHABLE;
+        int x = start % obstacles.width;
+        int y = start / obstacles.width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int d = distance[obstacles.index(nx, ny)];
+            if(d != UNREACHABLE && d + 1 < best) best = d + 1;
+        }
+        return best;
+    }
+
+    private int firstStep(int start, int d)
+    {
+        int x = start % obstacles.width;
+        int y = start / obstacles.width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(obstacles.inBounds(nx, ny) && distance[obstacles.index(nx, ny)] == d - 1) {
+                return obstacles.index(nx, ny);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Breadth-first distances from the goal over the static trees only.
+     */
+    private int[] build()
+    {
+        int[] field = new int[obstacles.width * obstacles.height];
+        Arrays.fill(field, UNREACHABLE);
+
+        int head = 0, tail = 0;
+        field[goal] = 0;
+        queue[tail++] = goal;
+        while(head < tail) {
+            int cell = queue[head++];
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(field[next] != UNREACHABLE || obstacles.isBlocked(next)) continue;
+                field[next] = field[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+        return field;
+    }
+
+    /**
+     * The tile was just blocked. Every tile that leaned on it, directly or through other
+     * such tiles, loses its distance unless it has another neighbour exactly one closer.
+     * Those tiles are found level by level outward, then get new distances from the
+     * unaffected tiles around them with a Dijkstra over just that region.
+     */
+    private void raise(int blockedCell)
+    {
+        int head = 0, tail = 0;
+        if(distance[blockedCell] != UNREACHABLE) {
+            affected[blockedCell] = true;
+            queue[tail++] = blockedCell;
+        }
+
+        while(head < tail) {
+            int cell = queue[head++];
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(affected[next] || distance[next] != distance[cell] + 1 || hasSupport(next)) continue;
+                affected[next] = true;
+                queue[tail++] = next;
+            }
+        }
+        tilesRepaired = tail;
+
+        // seed every affected tile from its unaffected neighbours, the blocked tile stays out
+        open.clear();
+        for(int i = 0; i < tail; i++) {
+            int cell = queue[i];
+            distance[cell] = UNREACHABLE;
+            if(cell == blockedCell) continue;
+
+            int best = bestNeighbour(cell);
+            if(best != UNREACHABLE) {
+                distance[cell] = best + 1;
+                open.push(cell, NodeHeap.key(best + 1, 0));
+            }
+        }
+
+        while(!open.isEmpty()) {
+            long key = open.peekKey();
+            int cell = open.pop();
+            if((int) (key >>> 32) != distance[cell]) continue;
+
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(!affected[next] || next == blockedCell || distance[cell] + 1 >= distance[next]) continue;
+                distance[next] = distance[cell] + 1;
+                open.push(next, NodeHeap.key(distance[next], 0));
+            }
+        }
+
+        for(int i = 0; i < tail; i++) {
+            affected[queue[i]] = false;
+        }
+    }
+
+    /**
+     * The tile was just opened. It takes its distance from its best neighbour and the
+     * improvement spreads breadth-first for as long as it shortens anything.
+     */
+    private void lower(int openedCell)
+    {
+        int best = bestNeighbour(openedCell);
+        tilesRepaired = 0;
+        if(best == UNREACHABLE) return;
+
+        int head = 0, tail = 0;
+        distance[openedCell] = best + 1;
+        queue[tail++] = openedCell;
+        while(head < tail) {
+            int cell = queue[head++];
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(isBlocked(next) || distance[cell] + 1 >= distance[next]) continue;
+                distance[next] = distance[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+        tilesRepaired = tail;
+    }
+
+    /**
+     * @return true if an unaffected, unblocked neighbour is one move closer to the goal
+     */
+    private boolean hasSupport(int cell)
+    {
+        if(cell == goal) return true;
+
+        int x = cell % obstacles.width;
+        int y = cell / obstacles.width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int next = obstacles.index(nx, ny);
+            if(!affected[next] && !isBlocked(next) && distance[next] == distance[cell] - 1) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the smallest distance among the unaffected, unblocked neighbours
+     */
+    private int bestNeighbour(int cell)
+    {
+        int best = UNREACHABLE;
+        int x = cell % obstacles.width;
+        int y = cell / obstacles.width;
+        for(int i = 0; i < 8; i++) {
+            int nx = x + GridAstar.DX[i];
+            int ny = y + GridAstar.DY[i];
+            if(!obstacles.inBounds(nx, ny)) continue;
+
+            int next = obstacles.index(nx, ny);
+            if(!affected[next] && !isBlocked(next) && distance[next] < best) best = distance[next];
+        }
+        return best;
+    }
+}
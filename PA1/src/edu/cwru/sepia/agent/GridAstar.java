@@ -0,0 +1,133 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * A* search over a width*height grid where every tile is addressed by the flat index
+ * x + y * width.
+ *
+ * Moves go to any of the 8 neighbouring tiles and all cost 1. The heuristic defaults to
+ * Chebyshev distance and can be swapped for any consistent GridHeuristic (such as
+ * LandmarkHeuristic), so a tile never needs reopening once closed.
+ * The open set is a binary heap keyed by f-cost, the closed set is a BitSet and the
+ * g-costs and parents are plain int arrays that are reused between searches.
+ */
+class GridAstar implements GridPathfinder {
+
+    static final int[] DX = {1, 1, 1, 0, 0, -1, -1, -1};
+    static final int[] DY = {1, 0, -1, 1, -1, 1, 0, -1};
+
+    private final int width;
+    private final int height;
+    private final GridHeuristic heuristic;
+
+    private final int[] gCost;
+    private final int[] parent;
+    private final BitSet closed;
+    private final NodeHeap open;
+
+    private int nodesExpanded;
+
+    GridAstar(int width, int height)
+    {
+        this(width, height, GridHeuristic.chebyshev(width));
+    }
+
+    GridAstar(int width, int height, GridHeuristic heuristic)
+    {
+        this.width = width;
+        this.height = height;
+        this.heuristic = heuristic;
+
+        gCost = new int[width * height];
+        parent = new int[width * height];
+        closed = new BitSet(width * height);
+        open = new NodeHeap(64);
+    }
+
+    @Override
+    public int[] search(int start, int goal, IntPredicate passable)
+    {
+        Arrays.fill(gCost, Integer.MAX_VALUE);
+        closed.clear();
+        open.clear();
+        nodesExpanded = 0;
+        int generated = 0;
+
+        gCost[start] = 0;
+        parent[start] = -1;
+        int startH = heuristic.estimate(start, goal);
+        open.push(start, NodeHeap.key(startH, startH));
+
+        while(!open.isEmpty()) {
+            int current = open.pop();
+
+            // skip stale copies of nodes that were pushed again with a better cost
+            if(closed.get(current)) continue;
+            if(current == goal) {
+                recordMetrics(generated);
+                return buildPath(start, goal);
+            }
+
+            closed.set(current);
+            nodesExpanded++;
+
+            int x = current % width;
+            int y = current / width;
+            int nextG = gCost[current] + 1;
+
+            for(int i = 0; i < 8; i++) {
+                int nx = x + DX[i];
+                int ny = y + DY[i];
+                if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = nx + ny * width;
+                if(closed.get(next) || nextG >= gCost[next]) continue;
+                if(next != goal && !passable.test(next)) continue;
+
+                gCost[next] = nextG;
+                parent[next] = current;
+                int h = heuristic.estimate(next, goal);
+                open.push(next, NodeHeap.key(nextG + h, h));
+                generated++;
+            }
+        }
+
+        recordMetrics(generated);
+        return null;
+    }
+
+    /**
+     * Every generated node and the start got one heuristic estimate.
+     */
+    private void recordMetrics(int generated)
+    {
+        AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED, nodesExpanded);
+        AgentMetrics.count(AgentMetrics.Counter.CHILDREN_GENERATED, generated);
+        AgentMetrics.count(AgentMetrics.Counter.HEURISTIC_CALLS, generated + 1);
+    }
+
+    @Override
+    public int getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    /**
+     * Walks the parent links back from the goal and drops both end points.
+     */
+    private int[] buildPath(int start, int goal)
+    {
+        int length = Math.max(gCost[goal] - 1, 0);
+        int[] path = new int[length];
+
+        int node = parent[goal];
+        for(int i = length - 1; i >= 0; i--) {
+            path[i] = node;
+            node = parent[node];
+        }
+        return path;
+    }
+}
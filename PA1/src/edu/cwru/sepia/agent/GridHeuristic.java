@@ -0,0 +1,26 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * Lower bound on the number of moves between two tiles of a flat width*height grid,
+ * used by GridAstar to order its open set.
+ *
+ * Implementations must never overestimate and must change by at most 1 between
+ * neighbouring tiles, so A* stays optimal without reopening closed tiles.
+ */
+interface GridHeuristic {
+
+    /**
+     * @param cell index of the tile being estimated
+     * @param goal index of the goal tile
+     * @return a lower bound on the moves from cell to goal
+     */
+    int estimate(int cell, int goal);
+
+    /**
+     * Chebyshev distance, the number of 8-connected moves needed on an empty map.
+     */
+    static GridHeuristic chebyshev(int width)
+    {
+        return (cell, goal) -> Math.max(Math.abs(cell % width - goal % width), Math.abs(cell / width - goal / width));
+    }
+}
@@ -0,0 +1,26 @@
+package edu.cwru.sepia.agent;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A single-query path search over a flat width*height grid, tiles addressed as x + y * width.
+ */
+interface GridPathfinder {
+
+    /**
+     * The goal tile itself is always treated as reachable since it holds the unit being
+     * attacked, every other tile must pass the given test.
+     *
+     * @param start index of the starting tile
+     * @param goal index of the goal tile
+     * @param passable test for whether a tile can be walked on
+     * @return the tiles between start and goal in walking order (neither end included),
+     *         or null if the goal cannot be reached
+     */
+    int[] search(int start, int goal, IntPredicate passable);
+
+    /**
+     * @return the number of nodes taken off the open set by the last search
+     */
+    int getNodesExpanded();
+}
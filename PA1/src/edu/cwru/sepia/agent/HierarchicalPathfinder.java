@@ -0,0 +1,543 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Hierarchical path-finding (HPA*) for maps that are too large to search tile by tile.
+ *
+ * The map is cut into square clusters. Wherever two neighbouring clusters share open
+ * border tiles, entrance tiles are placed on both sides, and the walking distance between
+ * every pair of entrances inside a cluster is computed once and stored per cluster. A
+ * query then only searches the small graph of entrances and refines the abstract path it
+ * picks, one cluster at a time.
+ *
+ * When tiles change (a tree is harvested, a unit moves into the way) only the clusters
+ * containing the changed tiles and their direct neighbours get their entrances and
+ * distance tables rebuilt.
+ *
+ * Paths are near-optimal rather than optimal since they are forced through entrances. An
+ * entrance graph can miss a route that only crosses a border diagonally around corners, so
+ * if the abstract search fails the query falls back to a plain A* over the whole map.
+ */
+class HierarchicalPathfinder {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    /** border runs at least this long get an entrance at each end instead of one in the middle */
+    private static final int WIDE_ENTRANCE = 6;
+
+    private final int width;
+    private final int height;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+
+    private final ObstacleGrid obstacles;
+
+    // entrance tiles and, for each, its slot in the owning cluster's tables
+    private final BitSet entrance;
+    private final int[] entranceSlot;
+    private final int[][] clusterEntrances;
+    private final int[][] clusterDistances;
+
+    // abstract search buffers, valid for a tile only when searchStamp matches the current query
+    private final int[] searchStamp;
+    private final int[] gCost;
+    private final int[] parent;
+    private final BitSet closed;
+    private final NodeHeap open;
+    private int stamp = 0;
+
+    // breadth-first search inside a single cluster
+    private final int[] localDistance;
+    private final int[] localParent;
+    private final int[] localQueue;
+    private int localX0, localY0, localWidth, localHeight;
+
+    private int[] startDistances;
+    private int[] goalDistances;
+
+    private GridAstar fallback;
+    private int nodesExpanded;
+
+    /**
+     * Builds the entrances and distance tables for every cluster.
+     *
+     * @param obstacles blocked tiles, copied so later updates can be diffed against it
+     * @param clusterSize width and height of a cluster in tiles
+     */
+    HierarchicalPathfinder(ObstacleGrid obstacles, int clusterSize)
+    {
+        this.width = obstacles.width;
+        this.height = obstacles.height;
+        this.clusterSize = clusterSize;
+        this.clustersX = (width + clusterSize - 1) / clusterSize;
+        this.clustersY = (height + clusterSize - 1) / clusterSize;
+
+        this.obstacles = new ObstacleGrid(width, height);
+        for(int cell = 0; cell < width * height; cell++) {
+            if(obstacles.isBlocked(cell)) this.obstacles.block(cell % width, cell / width);
+        }
+
+        entrance = new BitSet(width * height);
+        entranceSlot = new int[width * height];
+        clusterEntrances = new int[clustersX * clustersY][];
+        clusterDistances = new int[clustersX * clustersY][];
+
+        searchStamp = new int[width * height];
+        gCost = new int[width * height];
+        parent = new int[width * height];
+        closed = new BitSet(width * height);
+        open = new NodeHeap(64);
+
+        localDistance = new int[clusterSize * clusterSize];
+        localParent = new int[clusterSize * clusterSize];
+        localQueue = new int[clusterSize * clusterSize];
+
+        BitSet all = new BitSet(clustersX * clustersY);
+        all.set(0, clustersX * clustersY);
+        rebuild(all);
+    }
+
+    /**
+     * Brings the abstraction up to date with a new obstacle grid of the same size.
+     *
+     * @param newObstacles the current blocked tiles
+     * @return the number of clusters whose tiles changed
+     */
+    int update(ObstacleGrid newObstacles)
+    {
+        BitSet changed = new BitSet(clustersX * clustersY);
+
+        for(int cell = 0; cell < width * height; cell++) {
+            boolean blocked = newObstacles.isBlocked(cell);
+            if(blocked == obstacles.isBlocked(cell)) continue;
+
+            int x = cell % width;
+            int y = cell / width;
+            if(blocked) {
+                obstacles.block(x, y);
+            } else {
+                obstacles.unblock(x, y);
+            }
+            changed.set(clusterOf(x, y));
+        }
+
+        if(!changed.isEmpty()) rebuild(changed);
+        return changed.cardinality();
+    }
+
+    /**
+     * Finds a path over the entrance graph and refines it into single tile moves.
+     *
+     * @param start index of the starting tile
+     * @param goal index of the goal tile, always treated as reachable
+     * @return the tiles between start and goal in walking order (neither end included),
+     *         or null if the goal cannot be reached
+     */
+    int[] search(int start, int goal)
+    {
+        nodesExpanded = 0;
+        if(start == goal) return new int[0];
+
+        int[] abstractPath = abstractSearch(start, goal);
+        if(abstractPath == null) {
+            if(fallback == null) fallback = new GridAstar(width, height);
+            int[] path = fallback.search(start, goal, cell -> !obstacles.isBlocked(cell));
+            nodesExpanded += fallback.getNodesExpanded();
+            return path;
+        }
+
+        return refine(abstractPath, goal);
+    }
+
+    /**
+     * @return the number of abstract nodes expanded by the last search
+     */
+    int getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    private int clusterOf(int x, int y)
+    {
+        return x / clusterSize + (y / clusterSize) * clustersX;
+    }
+
+    private int clusterOf(int cell)
+    {
+        return clusterOf(cell % width, cell / width);
+    }
+
+    /**
+     * Recomputes entrances on every border touching a changed cluster, then the distance
+     * tables of the changed clusters and their neighbours, whose entrances may have moved.
+     */
+    private void rebuild(BitSet changed)
+    {
+        BitSet dirty = new BitSet(clustersX * clustersY);
+        for(int c = changed.nextSetBit(0); c >= 0; c = changed.nextSetBit(c + 1)) {
+            int cx = c % clustersX;
+            int cy = c / clustersX;
+            for(int ny = Math.max(cy - 1, 0); ny <= Math.min(cy + 1, clustersY - 1); ny++) {
+                for(int nx = Math.max(cx - 1, 0); nx <= Math.min(cx + 1, clustersX - 1); nx++) {
+                    dirty.set(nx + ny * clustersX);
+                }
+            }
+        }
+
+        // clear the entrances inside every dirty cluster
+        for(int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+            int x0 = (c % clustersX) * clusterSize;
+            int y0 = (c / clustersX) * clusterSize;
+            for(int y = y0; y < Math.min(y0 + clusterSize, height); y++) {
+                entrance.clear(x0 + y * width, Math.min(x0 + clusterSize, width) + y * width);
+            }
+        }
+
+        // redo every border of a dirty cluster, borders shared with clean clusters come out the same
+        for(int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+            int cx = c % clustersX;
+            int cy = c / clustersX;
+            for(int ny = cy - 1; ny <= cy + 1; ny++) {
+                for(int nx = cx - 1; nx <= cx + 1; nx++) {
+                    if(nx < 0 || ny < 0 || nx >= clustersX || ny >= clustersY || (nx == cx && ny == cy)) continue;
+                    addEntrances(Math.min(cx, nx), Math.min(cy, ny), nx - cx, ny - cy);
+                }
+            }
+        }
+
+        for(int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+            buildDistanceTable(c);
+        }
+    }
+
+    /**
+     * Places entrances on the border between cluster (cx, cy) and its neighbour in the
+     * direction (dx, dy). Straight borders get one or two entrances per open run, diagonal
+     * neighbours get a pair where the corner tiles are both open.
+     */
+    private void addEntrances(int cx, int cy, int dx, int dy)
+    {
+        if(dx != 0 && dy != 0) {
+            // the shared corner, (cx, cy) is the upper left of the two clusters involved
+            int x = (cx + 1) * clusterSize;
+            int y = (cy + 1) * clusterSize;
+            if(dx == dy) {
+                addPair(x - 1, y - 1, x, y);
+            } else {
+                addPair(x, y - 1, x - 1, y);
+            }
+            return;
+        }
+
+        boolean vertical = dx != 0;
+        int length = vertical ? Math.min(clusterSize, height - cy * clusterSize)
+                : Math.min(clusterSize, width - cx * clusterSize);
+
+        int runStart = -1;
+        for(int i = 0; i <= length; i++) {
+            boolean openPair = i < length && pairOpen(cx, cy, vertical, i);
+            if(openPair && runStart < 0) {
+                runStart = i;
+            } else if(!openPair && runStart >= 0) {
+                int runEnd = i - 1;
+                if(runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+                    addBorderPair(cx, cy, vertical, runStart);
+                    addBorderPair(cx, cy, vertical, runEnd);
+                } else {
+                    addBorderPair(cx, cy, vertical, (runStart + runEnd) / 2);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private boolean pairOpen(int cx, int cy, boolean vertical, int offset)
+    {
+        if(vertical) {
+            int x = (cx + 1) * clusterSize;
+            int y = cy * clusterSize + offset;
+            return free(x - 1, y) && free(x, y);
+        }
+        int x = cx * clusterSize + offset;
+        int y = (cy + 1) * clusterSize;
+        return free(x, y - 1) && free(x, y);
+    }
+
+    private void addBorderPair(int cx, int cy, boolean vertical, int offset)
+    {
+        if(vertical) {
+            int x = (cx + 1) * clusterSize;
+            int y = cy * clusterSize + offset;
+            addPair(x - 1, y, x, y);
+        } else {
+            int x = cx * clusterSize + offset;
+            int y = (cy + 1) * clusterSize;
+            addPair(x, y - 1, x, y);
+        }
+    }
+
+    private void addPair(int x1, int y1, int x2, int y2)
+    {
+        if(!free(x1, y1) || !free(x2, y2)) return;
+        entrance.set(x1 + y1 * width);
+        entrance.set(x2 + y2 * width);
+    }
+
+    private boolean free(int x, int y)
+    {
+        return obstacles.inBounds(x, y) && !obstacles.isBlocked(x, y);
+    }
+
+    /**
+     * Collects the entrances of a cluster and fills in the walking distance between each pair,
+     * moving only through tiles of that cluster.
+     */
+    private void buildDistanceTable(int cluster)
+    {
+        setLocalBounds(cluster);
+
+        int count = 0;
+        int[] cells = new int[localWidth * localHeight];
+        for(int y = localY0; y < localY0 + localHeight; y++) {
+            for(int x = localX0; x < localX0 + localWidth; x++) {
+                int cell = x + y * width;
+                if(entrance.get(cell)) {
+                    entranceSlot[cell] = count;
+                    cells[count++] = cell;
+                }
+            }
+        }
+
+        int[] distances = new int[count * count];
+        for(int i = 0; i < count; i++) {
+            localSearch(cells[i], -1);
+            for(int j = 0; j < count; j++) {
+                distances[i * count + j] = localDistance[toLocal(cells[j])];
+            }
+        }
+
+        clusterEntrances[cluster] = Arrays.copyOf(cells, count);
+        clusterDistances[cluster] = distances;
+    }
+
+    private void setLocalBounds(int cluster)
+    {
+        localX0 = (cluster % clustersX) * clusterSize;
+        localY0 = (cluster / clustersX) * clusterSize;
+        localWidth = Math.min(clusterSize, width - localX0);
+        localHeight = Math.min(clusterSize, height - localY0);
+    }
+
+    private int toLocal(int cell)
+    {
+        return (cell % width - localX0) + (cell / width - localY0) * localWidth;
+    }
+
+    private int toGlobal(int local)
+    {
+        return (localX0 + local % localWidth) + (localY0 + local / localWidth) * width;
+    }
+
+    /**
+     * Breadth-first search from a tile to every tile of the cluster set by setLocalBounds.
+     *
+     * @param source tile to search from
+     * @param goal tile that counts as open even though a unit stands on it, or -1
+     */
+    private void localSearch(int source, int goal)
+    {
+        int size = localWidth * localHeight;
+        Arrays.fill(localDistance, 0, size, INFINITY);
+
+        int head = 0, tail = 0;
+        int localSource = toLocal(source);
+        localDistance[localSource] = 0;
+        localParent[localSource] = -1;
+        localQueue[tail++] = localSource;
+
+        while(head < tail) {
+            int current = localQueue[head++];
+            int x = current % localWidth;
+            int y = current / localWidth;
+
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(nx < 0 || nx >= localWidth || ny < 0 || ny >= localHeight) continue;
+
+                int next = nx + ny * localWidth;
+                if(localDistance[next] != INFINITY) continue;
+
+                int cell = toGlobal(next);
+                if(cell != goal && obstacles.isBlocked(cell)) continue;
+
+                localDistance[next] = localDistance[current] + 1;
+                localParent[next] = current;
+                localQueue[tail++] = next;
+            }
+        }
+    }
+
+    /**
+     * Distances from a tile to each entrance of its own cluster, in slot order.
+     */
+    private int[] distancesToEntrances(int cell, int goal)
+    {
+        int cluster = clusterOf(cell);
+        setLocalBounds(cluster);
+        localSearch(cell, goal);
+
+        int[] entrances = clusterEntrances[cluster];
+        int[] distances = new int[entrances.length];
+        for(int i = 0; i < entrances.length; i++) {
+            distances[i] = localDistance[toLocal(entrances[i])];
+        }
+        return distances;
+    }
+
+    /**
+     * A* over the entrance graph with start and goal linked into their clusters.
+     *
+     * @return the abstract path from start to goal (both included), or null
+     */
+    private int[] abstractSearch(int start, int goal)
+    {
+        int startCluster = clusterOf(start);
+        int goalCluster = clusterOf(goal);
+
+        startDistances = distancesToEntrances(start, goal);
+        int directDistance = startCluster == goalCluster ? localDistance[toLocal(goal)] : INFINITY;
+        goalDistances = distancesToEntrances(goal, goal);
+
+        stamp++;
+        closed.clear();
+        open.clear();
+
+        relax(start, -1, 0, goal);
+
+        while(!open.isEmpty()) {
+            int current = open.pop();
+            if(closed.get(current)) continue;
+            if(current == goal) return abstractPath(start, goal);
+
+            closed.set(current);
+            nodesExpanded++;
+
+            int cluster = clusterOf(current);
+            int[] entrances = clusterEntrances[cluster];
+            int g = gCost[current];
+
+            if(current == start) {
+                for(int i = 0; i < entrances.length; i++) {
+                    if(startDistances[i] != INFINITY) relax(entrances[i], current, g + startDistances[i], goal);
+                }
+                if(directDistance != INFINITY) relax(goal, current, g + directDistance, goal);
+            }
+
+            if(entrance.get(current)) {
+                // other entrances of the same cluster through the precomputed table
+                int slot = entranceSlot[current];
+                int[] distances = clusterDistances[cluster];
+                for(int i = 0; i < entrances.length; i++) {
+                    int distance = distances[slot * entrances.length + i];
+                    if(i != slot && distance != INFINITY) relax(entrances[i], current, g + distance, goal);
+                }
+
+                // entrances just across a border
+                int x = current % width;
+                int y = current / width;
+                for(int i = 0; i < 8; i++) {
+                    int nx = x + GridAstar.DX[i];
+                    int ny = y + GridAstar.DY[i];
+                    if(!obstacles.inBounds(nx, ny)) continue;
+
+                    int next = nx + ny * width;
+                    if(entrance.get(next) && clusterOf(nx, ny) != cluster) relax(next, current, g + 1, goal);
+                }
+
+                if(cluster == goalCluster && goalDistances[entranceSlot[current]] != INFINITY) {
+                    relax(goal, current, g + goalDistances[entranceSlot[current]], goal);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void relax(int cell, int from, int g, int goal)
+    {
+        if(searchStamp[cell] == stamp && g >= gCost[cell]) return;
+
+        searchStamp[cell] = stamp;
+        gCost[cell] = g;
+        parent[cell] = from;
+
+        int h = Math.max(Math.abs(cell % width - goal % width), Math.abs(cell / width - goal / width));
+        open.push(cell, NodeHeap.key(g + h, h));
+    }
+
+    private int[] abstractPath(int start, int goal)
+    {
+        int length = 1;
+        for(int node = goal; node != start; node = parent[node]) length++;
+
+        int[] path = new int[length];
+        int node = goal;
+        for(int i = length - 1; i >= 0; i--) {
+            path[i] = node;
+            node = parent[node];
+        }
+        return path;
+    }
+
+    /**
+     * Expands each hop of the abstract path into single moves. Hops between clusters are
+     * already single moves, hops inside a cluster are searched within that cluster only.
+     */
+    private int[] refine(int[] abstractPath, int goal)
+    {
+        int[] path = new int[gCost[goal]];
+        int length = 0;
+
+        for(int i = 1; i < abstractPath.length; i++) {
+            int from = abstractPath[i - 1];
+            int to = abstractPath[i];
+
+            if(clusterOf(from) != clusterOf(to)) {
+                path[length++] = to;
+                continue;
+            }
+
+            setLocalBounds(clusterOf(from));
+            localSearch(from, goal);
+
+            // walk the breadth-first parents back from the hop's end
+            int hop = localDistance[toLocal(to)];
+            int local = toLocal(to);
+            for(int j = hop - 1; j >= 0; j--) {
+                path[length + j] = toGlobal(local);
+                local = localParent[local];
+            }
+            length += hop;
+        }
+
+        // stop at the first time the path reaches the goal, leaving the goal itself off
+        for(int i = 0; i < length; i++) {
+            if(path[i] == goal) return Arrays.copyOf(path, i);
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Used by PathfinderComparison to check that update leaves the same entrance tiles
+     * and distance tables as a fresh build.
+     */
+    boolean sameAbstraction(HierarchicalPathfinder other)
+    {
+        return entrance.equals(other.entrance) && Arrays.deepEquals(clusterEntrances, other.clusterEntrances)
+                && Arrays.deepEquals(clusterDistances, other.clusterDistances);
+    }
+}
@@ -0,0 +1,201 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Jump Point Search over the same flat grid as GridAstar.
+ *
+ * Every move costs 1, so on open ground there are many equally short paths and plain A*
+ * expands all of them. JPS only puts a tile on the open set when it is a jump point: the
+ * goal, or a tile where an obstacle next to the line of travel forces a turn. Runs of open
+ * tiles in between are skipped over by scanning along straight and diagonal lines, and are
+ * filled back in when the path is built so callers still get one tile per move.
+ */
+class JumpPointSearch implements GridPathfinder {
+
+    private final int width;
+    private final int height;
+
+    private final int[] gCost;
+    private final int[] parent;
+    private final BitSet closed;
+    private final NodeHeap open;
+
+    private IntPredicate passable;
+    private int goal;
+    private int nodesExpanded;
+
+    JumpPointSearch(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+
+        gCost = new int[width * height];
+        parent = new int[width * height];
+        closed = new BitSet(width * height);
+        open = new NodeHeap(64);
+    }
+
+    @Override
+    public int[] search(int start, int goal, IntPredicate passable)
+    {
+        Arrays.fill(gCost, Integer.MAX_VALUE);
+        closed.clear();
+        open.clear();
+        nodesExpanded = 0;
+
+        this.passable = passable;
+        this.goal = goal;
+
+        gCost[start] = 0;
+        parent[start] = -1;
+        int startH = distance(start, goal);
+        open.push(start, NodeHeap.key(startH, startH));
+
+        while(!open.isEmpty()) {
+            int current = open.pop();
+
+            if(closed.get(current)) continue;
+            if(current == goal) {
+                AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED, nodesExpanded);
+                return buildPath(start, goal);
+            }
+
+            closed.set(current);
+            nodesExpanded++;
+
+            int x = current % width;
+            int y = current / width;
+
+            if(parent[current] < 0) {
+                // the start has no direction of travel so every neighbour is a candidate
+                for(int i = 0; i < 8; i++) {
+                    jumpAndPush(current, x, y, GridAstar.DX[i], GridAstar.DY[i]);
+                }
+                continue;
+            }
+
+            int dx = Integer.signum(x - parent[current] % width);
+            int dy = Integer.signum(y - parent[current] / width);
+
+            if(dx != 0 && dy != 0) {
+                // natural neighbours of a diagonal move
+                jumpAndPush(current, x, y, dx, dy);
+                jumpAndPush(current, x, y, dx, 0);
+                jumpAndPush(current, x, y, 0, dy);
+
+                // forced neighbours around obstacles behind the move
+                if(!open(x - dx, y) && open(x - dx, y + dy)) jumpAndPush(current, x, y, -dx, dy);
+                if(!open(x, y - dy) && open(x + dx, y - dy)) jumpAndPush(current, x, y, dx, -dy);
+            } else if(dx != 0) {
+                jumpAndPush(current, x, y, dx, 0);
+                if(!open(x, y + 1) && open(x + dx, y + 1)) jumpAndPush(current, x, y, dx, 1);
+                if(!open(x, y - 1) && open(x + dx, y - 1)) jumpAndPush(current, x, y, dx, -1);
+            } else {
+                jumpAndPush(current, x, y, 0, dy);
+                if(!open(x + 1, y) && open(x + 1, y + dy)) jumpAndPush(current, x, y, 1, dy);
+                if(!open(x - 1, y) && open(x - 1, y + dy)) jumpAndPush(current, x, y, -1, dy);
+            }
+        }
+
+        AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED, nodesExpanded);
+        return null;
+    }
+
+    @Override
+    public int getNodesExpanded()
+    {
+        return nodesExpanded;
+    }
+
+    private void jumpAndPush(int from, int x, int y, int dx, int dy)
+    {
+        int jumpPoint = jump(x, y, dx, dy);
+        if(jumpPoint < 0 || closed.get(jumpPoint)) return;
+
+        int nextG = gCost[from] + distance(from, jumpPoint);
+        if(nextG >= gCost[jumpPoint]) return;
+
+        gCost[jumpPoint] = nextG;
+        parent[jumpPoint] = from;
+        int h = distance(jumpPoint, goal);
+        open.push(jumpPoint, NodeHeap.key(nextG + h, h));
+    }
+
+    /**
+     * Scans from (x, y) in the given direction until it reaches a jump point or runs into
+     * an obstacle. Diagonal scans also stop wherever a straight scan from the tile would
+     * find a jump point.
+     *
+     * @return index of the jump point, or -1 if the scan hit a wall
+     */
+    private int jump(int x, int y, int dx, int dy)
+    {
+        while(true) {
+            x += dx;
+            y += dy;
+            if(!open(x, y)) return -1;
+
+            int cell = x + y * width;
+            if(cell == goal) return cell;
+
+            if(dx != 0 && dy != 0) {
+                if((!open(x - dx, y) && open(x - dx, y + dy)) || (!open(x, y - dy) && open(x + dx, y - dy))) {
+                    return cell;
+                }
+                if(jump(x, y, dx, 0) >= 0 || jump(x, y, 0, dy) >= 0) {
+                    return cell;
+                }
+            } else if(dx != 0) {
+                if((!open(x, y + 1) && open(x + dx, y + 1)) || (!open(x, y - 1) && open(x + dx, y - 1))) {
+                    return cell;
+                }
+            } else {
+                if((!open(x + 1, y) && open(x + 1, y + dy)) || (!open(x - 1, y) && open(x - 1, y + dy))) {
+                    return cell;
+                }
+            }
+        }
+    }
+
+    private boolean open(int x, int y)
+    {
+        if(x < 0 || x >= width || y < 0 || y >= height) return false;
+
+        int cell = x + y * width;
+        return cell == goal || passable.test(cell);
+    }
+
+    private int distance(int a, int b)
+    {
+        return Math.max(Math.abs(a % width - b % width), Math.abs(a / width - b / width));
+    }
+
+    /**
+     * Walks back over the jump points and fills in the straight or diagonal run between each pair.
+     */
+    private int[] buildPath(int start, int goal)
+    {
+        int length = Math.max(gCost[goal] - 1, 0);
+        int[] path = new int[length];
+
+        int i = length;
+        int node = goal;
+        while(node != start) {
+            int from = parent[node];
+            int dx = Integer.signum(node % width - from % width);
+            int dy = Integer.signum(node / width - from / width);
+
+            // step back from node towards its parent, skipping the goal itself
+            int cell = node;
+            while(cell != from) {
+                if(cell != goal) path[--i] = cell;
+                cell -= dx + dy * width;
+            }
+            node = from;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,272 @@
+package edu.cwru.sepia.agent;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ALT heuristic (A*, Landmarks, Triangle inequality) for the 8-connected grid.
+ *
+ * A handful of landmark tiles are picked far apart from each other and the true move
+ * distance from each landmark to every tile is found by breadth-first search over the
+ * static obstacles. For any landmark L the triangle inequality gives
+ * |d(L, goal) - d(L, tile)| <= d(tile, goal), and the heuristic is the largest of these
+ * bounds and Chebyshev distance. Tiles blocked later (the enemy footman) only make true
+ * paths longer, so the bound stays admissible.
+ *
+ * Distances are stored as shorts, saturating at Short.MAX_VALUE, with -1 for tiles the
+ * landmark cannot reach. Tables are cached on disk under a name derived from the map so
+ * later runs on the same map skip the searches.
+ */
+class LandmarkHeuristic implements GridHeuristic {
+
+    static final int DEFAULT_LANDMARKS = 8;
+    static final File DEFAULT_DIRECTORY = new File("data");
+
+    private static final int FILE_MAGIC = 0x414c5432; // "ALT2", tables from the first placement are rebuilt
+    private static final short UNREACHABLE = -1;
+
+    private final int width;
+    private final int[] landmarks;
+    private final short[][] distances;
+
+    private LandmarkHeuristic(int width, int[] landmarks, short[][] distances)
+    {
+        this.width = width;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Loads the tables for the grid from the directory, or builds them and writes them
+     * there if there is no matching file yet.
+     *
+     * @param obstacles static obstacles of the map
+     * @param count number of landmarks to place
+     * @param directory where the table files are kept
+     * @return the heuristic for the map
+     */
+    static LandmarkHeuristic cached(ObstacleGrid obstacles, int count, File directory)
+    {
+        File file = new File(directory, String.format("landmarks_%dx%d_%016x_%d.bin",
+                obstacles.width, obstacles.height, obstacles.fingerprint(), count));
+
+        if(file.isFile()) {
+            try {
+                LandmarkHeuristic loaded = read(file, obstacles);
+                if(loaded != null) return loaded;
+            } catch(IOException e) {
+                System.err.println("Could not read " + file + ", rebuilding landmarks");
+            }
+        }
+
+        LandmarkHeuristic built = build(obstacles, count);
+        try {
+            built.write(file, obstacles);
+        } catch(IOException e) {
+            System.err.println("Could not write " + file + ": " + e.getMessage());
+        }
+        return built;
+    }
+
+    /**
+     * Picks the landmarks by farthest-point selection: each landmark is the tile farthest
+     * from all landmarks picked so far, and tiles no landmark reaches count as farther
+     * than any. So before any area of connected open tiles gets a second landmark, each
+     * one, largest first, gets one on the tile farthest from where the area was found.
+     * Landmarks end up on the edges and dead ends of the maze, which is where they give
+     * the tightest bounds.
+     *
+     * @param obstacles static obstacles of the map
+     * @param count number of landmarks to place
+     * @return the heuristic for the map
+     */
+    static LandmarkHeuristic build(ObstacleGrid obstacles, int count)
+    {
+        int size = obstacles.width * obstacles.height;
+
+        List<int[]> areas = areas(obstacles);
+        areas.sort((a, b) -> Integer.compare(b[0], a[0]));
+
+        // closest[cell] is the distance to the nearest landmark picked so far
+        short[] closest = new short[size];
+        Arrays.fill(closest, UNREACHABLE);
+
+        int[] landmarks = new int[count];
+        short[][] distances = new short[count][];
+        int placed = 0;
+        while(placed < count) {
+            int farthest = -1;
+            if(placed < areas.size()) {
+                farthest = areas.get(placed)[1];
+            } else {
+                for(int cell = 0; cell < size; cell++) {
+                    if(closest[cell] > 0 && (farthest < 0 || closest[cell] > closest[farthest])) farthest = cell;
+                }
+            }
+            if(farthest < 0) break;
+
+            landmarks[placed] = farthest;
+            distances[placed] = bfs(obstacles, farthest);
+            for(int cell = 0; cell < size; cell++) {
+                short d = distances[placed][cell];
+                if(d != UNREACHABLE && (closest[cell] == UNREACHABLE || d < closest[cell])) closest[cell] = d;
+            }
+            placed++;
+        }
+
+        if(placed < count) {
+            landmarks = Arrays.copyOf(landmarks, placed);
+            distances = Arrays.copyOf(distances, placed);
+        }
+        return new LandmarkHeuristic(obstacles.width, landmarks, distances);
+    }
+
+    @Override
+    public int estimate(int cell, int goal)
+    {
+        int h = Math.max(Math.abs(cell % width - goal % width), Math.abs(cell / width - goal / width));
+
+        for(short[] distance : distances) {
+            int toGoal = distance[goal];
+            int toCell = distance[cell];
+            if(toGoal == UNREACHABLE || toCell == UNREACHABLE) continue;
+
+            int bound = Math.abs(toGoal - toCell);
+            if(bound > h) h = bound;
+        }
+        return h;
+    }
+
+    /**
+     * @return the number of landmarks actually placed, fewer than asked for on tiny maps
+     */
+    int getLandmarkCount()
+    {
+        return landmarks.length;
+    }
+
+    /**
+     * Finds the connected areas of open tiles in one pass: each open tile no search has
+     * reached yet starts a breadth-first search over its area, and all of them share one
+     * distance array and queue, so every tile is visited once.
+     *
+     * @return each area's size and its tile farthest from where the area was found (the
+     *         first in tile order of those as far), single tiles are left out, a landmark
+     *         there bounds nothing
+     */
+    private static List<int[]> areas(ObstacleGrid obstacles)
+    {
+        int size = obstacles.width * obstacles.height;
+        short[] distance = new short[size];
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[size];
+
+        List<int[]> areas = new ArrayList<int[]>();
+        for(int start = 0; start < size; start++) {
+            if(distance[start] != UNREACHABLE || obstacles.isBlocked(start)) continue;
+
+            int head = 0, tail = 0;
+            int farthest = start;
+            distance[start] = 0;
+            queue[tail++] = start;
+            while(head < tail) {
+                int cell = queue[head++];
+                if(distance[cell] > distance[farthest] || distance[cell] == distance[farthest] && cell < farthest) {
+                    farthest = cell;
+                }
+                int x = cell % obstacles.width;
+                int y = cell / obstacles.width;
+                for(int i = 0; i < 8; i++) {
+                    int nx = x + GridAstar.DX[i];
+                    int ny = y + GridAstar.DY[i];
+                    if(!obstacles.inBounds(nx, ny)) continue;
+
+                    int next = obstacles.index(nx, ny);
+                    if(distance[next] != UNREACHABLE || obstacles.isBlocked(next)) continue;
+
+                    distance[next] = (short) Math.min(distance[cell] + 1, Short.MAX_VALUE);
+                    queue[tail++] = next;
+                }
+            }
+            if(tail > 1) areas.add(new int[] {tail, farthest});
+        }
+        return areas;
+    }
+
+    /**
+     * Breadth-first move counts from one tile to every other open tile.
+     */
+    private static short[] bfs(ObstacleGrid obstacles, int source)
+    {
+        int size = obstacles.width * obstacles.height;
+        short[] distance = new short[size];
+        Arrays.fill(distance, UNREACHABLE);
+
+        int[] queue = new int[size];
+        int head = 0, tail = 0;
+
+        distance[source] = 0;
+        queue[tail++] = source;
+        while(head < tail) {
+            int cell = queue[head++];
+            int x = cell % obstacles.width;
+            int y = cell / obstacles.width;
+            for(int i = 0; i < 8; i++) {
+                int nx = x + GridAstar.DX[i];
+                int ny = y + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(distance[next] != UNREACHABLE || obstacles.isBlocked(next)) continue;
+
+                distance[next] = (short) Math.min(distance[cell] + 1, Short.MAX_VALUE);
+                queue[tail++] = next;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * @return the tables in the file, or null if they were built for a different map
+     */
+    private static LandmarkHeuristic read(File file, ObstacleGrid obstacles) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != FILE_MAGIC || in.readInt() != obstacles.width || in.readInt() != obstacles.height
+                    || in.readLong() != obstacles.fingerprint()) {
+                return null;
+            }
+
+            int size = obstacles.width * obstacles.height;
+            int count = in.readInt();
+            int[] landmarks = new int[count];
+            short[][] distances = new short[count][size];
+            for(int i = 0; i < count; i++) {
+                landmarks[i] = in.readInt();
+                for(int cell = 0; cell < size; cell++) {
+                    distances[i][cell] = in.readShort();
+                }
+            }
+            return new LandmarkHeuristic(obstacles.width, landmarks, distances);
+        }
+    }
+
+    private void write(File file, ObstacleGrid obstacles) throws IOException
+    {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(obstacles.width);
+            out.writeInt(obstacles.height);
+            out.writeLong(obstacles.fingerprint());
+            out.writeInt(landmarks.length);
+            for(int i = 0; i < landmarks.length; i++) {
+                out.writeInt(landmarks[i]);
+                for(short d : distances[i]) {
+                    out.writeShort(d);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to int values, with no boxing.
+ *
+ * Keys must not be negative since -1 marks an empty slot. Clearing keeps the table so
+ * a map that is filled and cleared every turn stops allocating once it has grown.
+ */
+class LongIntHashMap {
+
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntHashMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return the value stored for the key, or -1 if there is none
+     */
+    int get(long key)
+    {
+        int mask = keys.length - 1;
+        for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if(keys[slot] == key) return values[slot];
+            if(keys[slot] == EMPTY) return -1;
+        }
+    }
+
+    boolean containsKey(long key)
+    {
+        return get(key) != -1;
+    }
+
+    void put(long key, int value)
+    {
+        if(2 * (size + 1) > keys.length) grow();
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while(keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if(keys[slot] == EMPTY) size++;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void clear()
+    {
+        if(size == 0) return;
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
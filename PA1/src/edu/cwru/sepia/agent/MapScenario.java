@@ -0,0 +1,187 @@
+package edu.cwru.sepia.agent;
+
+import edu.cwru.sepia.environment.model.persistence.generated.XmlState;
+import edu.cwru.sepia.environment.model.state.State;
+import edu.cwru.sepia.environment.model.state.Unit;
+import edu.cwru.sepia.environment.model.state.XmlStateCreator;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * The path query an AstarAgent would plan on its first turn, read straight from a map file
+ * so the planners can be run outside of a SEPIA episode.
+ */
+class MapScenario {
+
+    final String name;
+    final ObstacleGrid obstacles;
+    final int start;
+    final int goal;
+    final int enemyCell;
+
+    MapScenario(String name, ObstacleGrid obstacles, int start, int goal, int enemyCell)
+    {
+        this.name = name;
+        this.obstacles = obstacles;
+        this.start = start;
+        this.goal = goal;
+        this.enemyCell = enemyCell;
+    }
+
+    /**
+     * Loads a map XML (e.g. data/maze_16x16.xml) and finds the footman, the enemy
+     * townhall and the enemy footman in it the same way AstarAgent.initialStep does.
+     *
+     * @param file path of the map XML
+     * @return the scenario, or null if the map has no footman or townhall
+     */
+    static MapScenario load(String file) throws JAXBException
+    {
+        XmlState xml = JAXBContext.newInstance(XmlState.class).createUnmarshaller()
+                .unmarshal(new StreamSource(new File(file)), XmlState.class).getValue();
+        State.StateView state = new XmlStateCreator(xml).createState().getView(Agent.OBSERVER_ID);
+
+        ObstacleGrid obstacles = ObstacleGrid.fromState(state);
+        int start = -1, goal = -1, enemyCell = -1;
+
+        for(Integer playerNum : state.getPlayerNumbers())
+        {
+            for(Unit.UnitView unit : state.getUnits(playerNum))
+            {
+                String unitType = unit.getTemplateView().getName().toLowerCase();
+                int cell = obstacles.index(unit.getXPosition(), unit.getYPosition());
+                if(unitType.equals("townhall")) {
+                    goal = cell;
+                } else if(unitType.equals("footman") && playerNum == 0) {
+                    start = cell;
+                } else if(unitType.equals("footman")) {
+                    enemyCell = cell;
+                }
+            }
+        }
+
+        if(start == -1 || goal == -1) return null;
+        return new MapScenario(new File(file).getName(), obstacles, start, goal, enemyCell);
+    }
+
+    /**
+     * A size*size map with trees scattered at the given density, going from the top left
+     * corner to the bottom right one. Seeds that leave the corners disconnected are
+     * skipped so the query always has a path.
+     *
+     * @param size width and height of the map
+     * @param density fraction of tiles holding a tree
+     * @param seed seed for the tree placement
+     * @return the scenario
+     */
+    static MapScenario random(int size, double density, long seed)
+    {
+        Random random = new Random(seed);
+        int goal = size * size - 1;
+        while(true) {
+            ObstacleGrid obstacles = new ObstacleGrid(size, size);
+            for(int cell = 0; cell < size * size; cell++) {
+                if(cell != 0 && cell != goal && random.nextDouble() < density) {
+                    obstacles.block(cell % size, cell / size);
+                }
+            }
+            if(connected(obstacles, 0, goal)) {
+                return new MapScenario("random_" + size + "x" + size, obstacles, 0, goal, -1);
+            }
+        }
+    }
+
+    /**
+     * A size*size perfect maze carved by a randomized depth-first search, with corridors
+     * on the even rows and columns and one path between any two of them. The query goes
+     * from the top left corner to the last corridor tile in the bottom right.
+     *
+     * @param size width and height of the map
+     * @param seed seed for the carving order
+     * @return the scenario
+     */
+    static MapScenario maze(int size, long seed)
+    {
+        Random random = new Random(seed);
+        ObstacleGrid obstacles = new ObstacleGrid(size, size);
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(x % 2 == 1 || y % 2 == 1) obstacles.block(x, y);
+            }
+        }
+
+        int rooms = (size + 1) / 2;
+        boolean[] visited = new boolean[rooms * rooms];
+        int[] stack = new int[rooms * rooms];
+        int top = 0;
+        stack[top++] = 0;
+        visited[0] = true;
+
+        int[] directions = {1, 0, -1, 0, 0, 1, 0, -1};
+        int[] options = new int[4];
+        while(top > 0) {
+            int room = stack[top - 1];
+            int rx = room % rooms;
+            int ry = room / rooms;
+
+            int count = 0;
+            for(int i = 0; i < 4; i++) {
+                int nx = rx + directions[2 * i];
+                int ny = ry + directions[2 * i + 1];
+                if(nx >= 0 && nx < rooms && ny >= 0 && ny < rooms && !visited[nx + ny * rooms]) options[count++] = i;
+            }
+            if(count == 0) {
+                top--;
+                continue;
+            }
+
+            int i = options[random.nextInt(count)];
+            int nx = rx + directions[2 * i];
+            int ny = ry + directions[2 * i + 1];
+            obstacles.unblock(2 * rx + directions[2 * i], 2 * ry + directions[2 * i + 1]);
+            visited[nx + ny * rooms] = true;
+            stack[top++] = nx + ny * rooms;
+        }
+
+        int last = 2 * (rooms - 1);
+        return new MapScenario("maze_" + size + "x" + size, obstacles, 0, obstacles.index(last, last), -1);
+    }
+
+    private static boolean connected(ObstacleGrid obstacles, int start, int goal)
+    {
+        boolean[] seen = new boolean[obstacles.width * obstacles.height];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        seen[start] = true;
+        queue.add(start);
+        while(!queue.isEmpty()) {
+            int cell = queue.poll();
+            if(cell == goal) return true;
+            for(int i = 0; i < 8; i++) {
+                int nx = cell % obstacles.width + GridAstar.DX[i];
+                int ny = cell / obstacles.width + GridAstar.DY[i];
+                if(!obstacles.inBounds(nx, ny)) continue;
+
+                int next = obstacles.index(nx, ny);
+                if(!seen[next] && !obstacles.isBlocked(next)) {
+                    seen[next] = true;
+                    queue.add(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the legality test AstarAgent uses, trees and the enemy footman are blocked
+     */
+    IntPredicate passable()
+    {
+        return cell -> cell != enemyCell && !obstacles.isBlocked(cell);
+    }
+}
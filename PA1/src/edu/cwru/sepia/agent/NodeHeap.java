@@ -0,0 +1,114 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of grid node indices ordered by a long priority key.
+ *
+ * Nodes are not decreased in place, a node that improves is simply pushed again
+ * and the stale copy is skipped by the caller when it is popped (lazy deletion).
+ * Everything lives in two primitive arrays so pushing and popping never allocates
+ * once the heap has grown to its working size.
+ */
+class NodeHeap {
+
+    private long[] keys;
+    private int[] nodes;
+    private int size;
+
+    NodeHeap(int initialCapacity)
+    {
+        keys = new long[Math.max(initialCapacity, 16)];
+        nodes = new int[keys.length];
+    }
+
+    /**
+     * Builds the usual A* key, ordering by f-cost and breaking ties towards the lower h-cost
+     * so the search keeps pushing along the front closest to the goal.
+     *
+     * @param f total estimated cost
+     * @param h heuristic part of the estimate
+     * @return a key that sorts by f then h
+     */
+    static long key(int f, int h)
+    {
+        return ((long) f << 32) | (h & 0xFFFFFFFFL);
+    }
+
+    void push(int node, long key)
+    {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+
+        // sift the new entry up from the bottom of the heap
+        int i = size++;
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(keys[parent] <= key) break;
+            keys[i] = keys[parent];
+            nodes[i] = nodes[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+    }
+
+    /**
+     * @return the node with the smallest key, removing it from the heap
+     */
+    int pop()
+    {
+        int top = nodes[0];
+        size--;
+        if(size > 0) {
+            siftDown(keys[size], nodes[size]);
+        }
+        return top;
+    }
+
+    /**
+     * @return the node with the smallest key, leaving it on the heap
+     */
+    int peek()
+    {
+        return nodes[0];
+    }
+
+    long peekKey()
+    {
+        return keys[0];
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void clear()
+    {
+        size = 0;
+    }
+
+    private void siftDown(long key, int node)
+    {
+        int i = 0;
+        int half = size >>> 1;
+        while(i < half) {
+            int child = 2 * i + 1;
+            if(child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if(key <= keys[child]) break;
+            keys[i] = keys[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.cwru.sepia.agent;
+
+import edu.cwru.sepia.environment.model.state.ResourceNode;
+import edu.cwru.sepia.environment.model.state.State;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy bitmap of the map with one bit per tile, packed into longs.
+ *
+ * Tiles use the same flat index as GridAstar (x + y * width) so checking whether a
+ * tile is blocked is a single shift and mask instead of a walk over every resource.
+ */
+class ObstacleGrid {
+
+    final int width;
+    final int height;
+
+    private final long[] bits;
+
+    ObstacleGrid(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+
+        bits = new long[(width * height + 63) >>> 6];
+    }
+
+    /**
+     * Marks the tile of every resource node (trees and mines) in the state as blocked.
+     *
+     * @param state the state to read the map extent and resources from
+     * @return the obstacle grid for the state
+     */
+    static ObstacleGrid fromState(State.StateView state)
+    {
+        ObstacleGrid grid = new ObstacleGrid(state.getXExtent(), state.getYExtent());
+
+        for(Integer resourceID : state.getAllResourceIds())
+        {
+            ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
+            grid.block(resource.getXPosition(), resource.getYPosition());
+        }
+
+        return grid;
+    }
+
+    int index(int x, int y)
+    {
+        return x + y * width;
+    }
+
+    boolean inBounds(int x, int y)
+    {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    boolean isBlocked(int cell)
+    {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    boolean isBlocked(int x, int y)
+    {
+        return isBlocked(index(x, y));
+    }
+
+    void block(int x, int y)
+    {
+        int cell = index(x, y);
+        bits[cell >>> 6] |= 1L << cell;
+    }
+
+    void unblock(int x, int y)
+    {
+        int cell = index(x, y);
+        bits[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * @return a grid with the same extent and blocked tiles that later blocks and unblocks
+     *         on this one do not change
+     */
+    ObstacleGrid copy()
+    {
+        ObstacleGrid copy = new ObstacleGrid(width, height);
+        System.arraycopy(bits, 0, copy.bits, 0, bits.length);
+        return copy;
+    }
+
+    /**
+     * @return true if the other grid has the same extent and the same tiles blocked
+     */
+    boolean sameTiles(ObstacleGrid other)
+    {
+        return width == other.width && height == other.height && Arrays.equals(bits, other.bits);
+    }
+
+    /**
+     * @return a 64 bit hash of the extent and the blocked tiles, for naming data cached per map
+     */
+    long fingerprint()
+    {
+        long hash = width * 31L + height;
+        for(long word : bits) {
+            hash = (hash ^ word) * 0x100000001B3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+}
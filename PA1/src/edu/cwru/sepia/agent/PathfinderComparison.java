@@ -0,0 +1,135 @@
+package edu.cwru.sepia.agent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the single-query planners against each other on the maze maps and prints the
+ * path length, nodes expanded and average wall time per search.
+ *
+ * Usage: java edu.cwru.sepia.agent.PathfinderComparison [map.xml ...]
+ * With no arguments every data/maze_*.xml map (not the configs) is used.
+ *
+ * Exits with status 1 if ALT never expands fewer nodes than plain A* with Chebyshev
+ * distance, which means the landmarks are not bounding anything, or if the HPA*
+ * abstraction after an update differs from one built fresh for the same tiles.
+ */
+public class PathfinderComparison {
+
+    private static final int WARMUP_RUNS = 2000;
+    private static final int TIMED_RUNS = 5000;
+
+    private static final int UPDATE_ROUNDS = 20;
+    private static final int TILES_PER_UPDATE = 6;
+
+    private static final AstarAgent.Planner[] PLANNERS = {AstarAgent.Planner.ASTAR, AstarAgent.Planner.JPS, AstarAgent.Planner.ALT};
+
+    public static void main(String[] args) throws Exception
+    {
+        List<String> maps = args.length > 0 ? Arrays.asList(args) : defaultMaps();
+
+        System.out.println(String.format("%-28s %-8s %7s %9s %12s", "map", "planner", "length", "expanded", "usec/search"));
+        boolean landmarksHelped = false;
+        boolean updatesMatched = true;
+        for(String map : maps)
+        {
+            MapScenario scenario = MapScenario.load(map);
+            if(scenario == null) {
+                System.err.println("Skipping " + map + ", no footman or townhall");
+                continue;
+            }
+
+            if(!checkHierarchicalUpdates(scenario)) {
+                System.err.println(scenario.name + ": HPA* abstraction after update differs from a fresh build");
+                updatesMatched = false;
+            }
+
+            int astarExpanded = -1;
+            for(AstarAgent.Planner planner : PLANNERS)
+            {
+                GridPathfinder search = AstarAgent.createPathfinder(planner, scenario.obstacles);
+
+                for(int i = 0; i < WARMUP_RUNS; i++) {
+                    search.search(scenario.start, scenario.goal, scenario.passable());
+                }
+
+                int[] path = null;
+                long startTime = System.nanoTime();
+                for(int i = 0; i < TIMED_RUNS; i++) {
+                    path = search.search(scenario.start, scenario.goal, scenario.passable());
+                }
+                double micros = (System.nanoTime() - startTime) / 1e3 / TIMED_RUNS;
+
+                System.out.println(String.format("%-28s %-8s %7s %9d %12.2f", scenario.name,
+                        planner.name().toLowerCase(), path == null ? "none" : String.valueOf(path.length),
+                        search.getNodesExpanded(), micros));
+
+                if(planner == AstarAgent.Planner.ASTAR) {
+                    astarExpanded = search.getNodesExpanded();
+                } else if(planner == AstarAgent.Planner.ALT && search.getNodesExpanded() < astarExpanded) {
+                    landmarksHelped = true;
+                }
+            }
+        }
+
+        if(!landmarksHelped) {
+            System.err.println("ALT expanded as many nodes as A* on every map");
+        }
+        if(!landmarksHelped || !updatesMatched) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Flips a few random tiles at a time, as trees being cut down and units moving into
+     * the way would, and after each round compares the incrementally updated abstraction
+     * with one built from scratch.
+     *
+     * @return true if every round matched
+     */
+    static boolean checkHierarchicalUpdates(MapScenario scenario)
+    {
+        ObstacleGrid obstacles = scenario.obstacles;
+        ObstacleGrid current = new ObstacleGrid(obstacles.width, obstacles.height);
+        for(int cell = 0; cell < obstacles.width * obstacles.height; cell++) {
+            if(obstacles.isBlocked(cell)) current.block(cell % obstacles.width, cell / obstacles.width);
+        }
+
+        HierarchicalPathfinder updated = new HierarchicalPathfinder(current, AstarAgent.DEFAULT_CLUSTER_SIZE);
+        Random random = new Random(obstacles.fingerprint());
+        for(int round = 0; round < UPDATE_ROUNDS; round++) {
+            for(int i = 0; i < TILES_PER_UPDATE; i++) {
+                int x = random.nextInt(current.width);
+                int y = random.nextInt(current.height);
+                if(current.isBlocked(x, y)) {
+                    current.unblock(x, y);
+                } else {
+                    current.block(x, y);
+                }
+            }
+
+            updated.update(current);
+            if(!updated.sameAbstraction(new HierarchicalPathfinder(current, AstarAgent.DEFAULT_CLUSTER_SIZE))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static List<String> defaultMaps()
+    {
+        List<String> maps = new ArrayList<String>();
+        File[] files = new File("data").listFiles((dir, name) -> name.startsWith("maze_")
+                && name.endsWith(".xml") && !name.endsWith("_config.xml"));
+        if(files != null) {
+            Arrays.sort(files);
+            for(File file : files) {
+                maps.add(file.getPath());
+            }
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,214 @@
+package edu.cwru.sepia.agent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Microbenchmark of every search variant on the shipped maze maps and on generated
+ * random and maze grids from 16x16 up to 1024x1024.
+ *
+ * Each (map, variant) pair is warmed up for a few timed iterations before it is measured,
+ * so the JIT has compiled the search by then. Every iteration runs the query until at
+ * least ITERATION_NANOS have passed and reports the time and the bytes allocated by the
+ * benchmark thread per search. Setup that a planner does once per map (building the HPA
+ * abstraction, the landmark tables or the flow field) happens before the warmup and is
+ * not measured, D* Lite is measured building and solving a fresh search since that is
+ * what a first plan costs.
+ *
+ * Usage: java edu.cwru.sepia.agent.PathfindingBenchmark [maxSize]
+ * maxSize (default 1024) caps the generated grids, the shipped maps are always run.
+ */
+public class PathfindingBenchmark {
+
+    private static final int MIN_SIZE = 16;
+    private static final int DEFAULT_MAX_SIZE = 1024;
+    private static final double RANDOM_DENSITY = 0.3;
+    private static final long SEED = 42;
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200000000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // written with every result so the searches cannot be optimized away
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception
+    {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_SIZE;
+
+        List<MapScenario> scenarios = new ArrayList<MapScenario>();
+        for(String map : PathfinderComparison.defaultMaps())
+        {
+            MapScenario scenario = MapScenario.load(map);
+            if(scenario != null) scenarios.add(scenario);
+        }
+        for(int size = MIN_SIZE; size <= maxSize; size *= 2)
+        {
+            scenarios.add(MapScenario.random(size, RANDOM_DENSITY, SEED));
+            scenarios.add(MapScenario.maze(size, SEED));
+        }
+
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.println(String.format("%-24s %-12s %7s %9s %12s %10s %12s", "map", "variant",
+                "length", "expanded", "usec/search", "+-usec", "bytes/search"));
+
+        for(MapScenario scenario : scenarios)
+        {
+            for(AstarAgent.Planner planner : AstarAgent.Planner.values())
+            {
+                run(scenario, planner, query(scenario, planner));
+            }
+        }
+    }
+
+    /**
+     * One path query as the benchmark loop sees it, with the per-map setup already done.
+     */
+    private interface Query
+    {
+        int[] run();
+
+        int getNodesExpanded();
+    }
+
+    private static Query query(MapScenario scenario, AstarAgent.Planner planner)
+    {
+        IntPredicate passable = scenario.passable();
+
+        if(planner == AstarAgent.Planner.INCREMENTAL) {
+            ObstacleGrid obstacles = withEnemy(scenario);
+            return new Query() {
+                private DStarLite search;
+
+                public int[] run()
+                {
+                    search = new DStarLite(obstacles, scenario.start, scenario.goal);
+                    return search.findPath();
+                }
+
+                public int getNodesExpanded()
+                {
+                    return search.getNodesExpanded();
+                }
+            };
+        }
+
+        if(planner == AstarAgent.Planner.HPA) {
+            HierarchicalPathfinder search = new HierarchicalPathfinder(withEnemy(scenario), AstarAgent.DEFAULT_CLUSTER_SIZE);
+            return new Query() {
+                public int[] run()
+                {
+                    return search.search(scenario.start, scenario.goal);
+                }
+
+                public int getNodesExpanded()
+                {
+                    return search.getNodesExpanded();
+                }
+            };
+        }
+
+        if(planner == AstarAgent.Planner.FLOW) {
+            FlowField field = new FlowField(scenario.obstacles, scenario.goal);
+            field.setBlocked(scenario.enemyCell, true);
+            return new Query() {
+                public int[] run()
+                {
+                    return field.path(scenario.start);
+                }
+
+                public int getNodesExpanded()
+                {
+                    return 0;
+                }
+            };
+        }
+
+        // landmarks are built in memory so the generated grids leave no table files behind
+        GridPathfinder search = planner == AstarAgent.Planner.ALT
+                ? new GridAstar(scenario.obstacles.width, scenario.obstacles.height,
+                        LandmarkHeuristic.build(scenario.obstacles, LandmarkHeuristic.DEFAULT_LANDMARKS))
+                : AstarAgent.createPathfinder(planner, scenario.obstacles);
+        return new Query() {
+            public int[] run()
+            {
+                return search.search(scenario.start, scenario.goal, passable);
+            }
+
+            public int getNodesExpanded()
+            {
+                return search.getNodesExpanded();
+            }
+        };
+    }
+
+    private static void run(MapScenario scenario, AstarAgent.Planner planner, Query query)
+    {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(query);
+        }
+
+        double[] micros = new double[MEASURED_ITERATIONS];
+        double totalBytes = 0;
+        for(int i = 0; i < MEASURED_ITERATIONS; i++) {
+            double[] result = iteration(query);
+            micros[i] = result[0];
+            totalBytes += result[1];
+        }
+
+        double mean = 0;
+        for(double value : micros) mean += value;
+        mean /= micros.length;
+        double variance = 0;
+        for(double value : micros) variance += (value - mean) * (value - mean);
+        double deviation = Math.sqrt(variance / (micros.length - 1));
+
+        int[] path = query.run();
+        System.out.println(String.format("%-24s %-12s %7s %9d %12.2f %10.2f %12.0f", scenario.name,
+                planner.name().toLowerCase(), path == null ? "none" : String.valueOf(path.length),
+                query.getNodesExpanded(), mean, deviation, totalBytes / MEASURED_ITERATIONS));
+    }
+
+    /**
+     * @return microseconds and bytes allocated per search over one iteration
+     */
+    private static double[] iteration(Query query)
+    {
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+        long startTime = System.nanoTime();
+
+        long operations = 0;
+        long elapsed;
+        do {
+            int[] path = query.run();
+            sink = path == null ? -1 : path.length;
+            operations++;
+            elapsed = System.nanoTime() - startTime;
+        } while(elapsed < ITERATION_NANOS);
+
+        long bytes = THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+
+        return new double[] {elapsed / 1e3 / operations, (double) bytes / operations};
+    }
+
+    /**
+     * HPA and D* Lite take the obstacles up front instead of a passable test, so the
+     * enemy footman is added to a copy of the trees for them.
+     */
+    private static ObstacleGrid withEnemy(MapScenario scenario)
+    {
+        ObstacleGrid obstacles = new ObstacleGrid(scenario.obstacles.width, scenario.obstacles.height);
+        for(int cell = 0; cell < obstacles.width * obstacles.height; cell++) {
+            if(scenario.obstacles.isBlocked(cell) || cell == scenario.enemyCell) {
+                obstacles.block(cell % obstacles.width, cell / obstacles.width);
+            }
+        }
+        return obstacles;
+    }
+}
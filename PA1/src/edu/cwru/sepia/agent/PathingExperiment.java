@@ -0,0 +1,216 @@
+package edu.cwru.sepia.agent;
+
+import edu.cwru.sepia.environment.Environment;
+import edu.cwru.sepia.environment.model.SimpleModel;
+import edu.cwru.sepia.environment.model.persistence.generated.XmlState;
+import edu.cwru.sepia.environment.model.state.XmlStateCreator;
+import edu.cwru.sepia.experiment.Configuration;
+import edu.cwru.sepia.experiment.ConfigurationValues;
+import edu.cwru.sepia.util.config.xml.XmlAgentParameters;
+import edu.cwru.sepia.util.config.xml.XmlConfiguration;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs many AstarAgent episodes on the maze configs without the VisualAgent or any
+ * per-step console output, and writes one CSV row per episode.
+ *
+ * The AstarAgent of each config is replaced by a headless one with the chosen planner,
+ * every other player except the VisualAgent (the EnemyBlockerAgent on the dynamic map)
+ * is built from the config as usual. An episode ends when the townhall is destroyed, when
+ * the agent finds there is no path, or at the turn limit. The enemy footman keeps the
+ * enemy player alive after the townhall falls, so SEPIA itself would never end it.
+ *
+ * Usage: java edu.cwru.sepia.agent.PathingExperiment [-episodes n] [-planner name]
+ *        [-turns n] [-out file.csv] [config.xml ...]
+ * With no configs every data/maze_*_config.xml is run. A summary per config is printed
+ * at the end.
+ */
+public class PathingExperiment {
+
+    private static final int DEFAULT_EPISODES = 100;
+    private static final int DEFAULT_TURN_LIMIT = 1000;
+    private static final String VISUAL_AGENT = "edu.cwru.sepia.agent.visual.VisualAgent";
+
+    public static void main(String[] args) throws Exception
+    {
+        int episodes = DEFAULT_EPISODES;
+        int turnLimit = DEFAULT_TURN_LIMIT;
+        AstarAgent.Planner planner = AstarAgent.Planner.ASTAR;
+        String out = "pathing_experiment.csv";
+        List<String> configs = new ArrayList<String>();
+
+        for(int i = 0; i < args.length; i++)
+        {
+            if(args[i].equals("-episodes")) {
+                episodes = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("-planner")) {
+                planner = AstarAgent.Planner.valueOf(args[++i].toUpperCase());
+            } else if(args[i].equals("-turns")) {
+                turnLimit = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("-out")) {
+                out = args[++i];
+            } else {
+                configs.add(args[i]);
+            }
+        }
+        if(configs.isEmpty()) {
+            configs = defaultConfigs();
+        }
+
+        try(PrintWriter csv = new PrintWriter(new FileWriter(out)))
+        {
+            csv.println("config,planner,episode,outcome,turns,replans,plan_ms,execution_ms");
+
+            List<String> summaries = new ArrayList<String>();
+            for(String configFile : configs)
+            {
+                // parse once, every episode starts from a fresh state built from the same map
+                XmlConfiguration config = JAXBContext.newInstance(XmlConfiguration.class).createUnmarshaller()
+                        .unmarshal(new StreamSource(new File(configFile)), XmlConfiguration.class).getValue();
+                XmlState map = JAXBContext.newInstance(XmlState.class).createUnmarshaller()
+                        .unmarshal(new StreamSource(new File(config.getMap())), XmlState.class).getValue();
+                XmlStateCreator stateCreator = new XmlStateCreator(map);
+                String name = new File(configFile).getName();
+
+                long[] turns = new long[episodes];
+                long[] planTimes = new long[episodes];
+                int wins = 0;
+
+                for(int episode = 0; episode < episodes; episode++)
+                {
+                    Result result = runEpisode(config, stateCreator, planner, turnLimit, episode);
+                    csv.println(String.format("%s,%s,%d,%s,%d,%d,%.3f,%.3f", name,
+                            planner.name().toLowerCase(), episode, result.outcome, result.turns,
+                            result.replans, result.planTime / 1e6, result.executionTime / 1e6));
+
+                    turns[episode] = result.turns;
+                    planTimes[episode] = result.planTime;
+                    if(result.outcome.equals("win")) wins++;
+                }
+
+                summaries.add(String.format("%-32s %5d/%-5d %8d %8d %8d %12.3f %12.3f",
+                        name, wins, episodes, percentile(turns, 50), percentile(turns, 95),
+                        percentile(turns, 100), percentile(planTimes, 50) / 1e6, percentile(planTimes, 95) / 1e6));
+            }
+
+            System.out.println(String.format("%-32s %11s %8s %8s %8s %12s %12s", "config", "wins",
+                    "turns50", "turns95", "max", "plan_ms50", "plan_ms95"));
+            for(String summary : summaries) {
+                System.out.println(summary);
+            }
+            System.out.println("Wrote " + out);
+        }
+
+        // SEPIA leaves the agent threads of the last environment running
+        System.exit(0);
+    }
+
+    private static class Result
+    {
+        String outcome;
+        int turns;
+        int replans;
+        long planTime;
+        long executionTime;
+    }
+
+    private static Result runEpisode(XmlConfiguration config, XmlStateCreator stateCreator,
+                                     AstarAgent.Planner planner, int turnLimit, int seed)
+            throws ReflectiveOperationException, InterruptedException
+    {
+        AstarAgent astar = null;
+        List<Agent> agents = new ArrayList<Agent>();
+        for(XmlAgentParameters player : config.getPlayer())
+        {
+            String className = player.getAgentClass().getClassName();
+            if(className.equals(VISUAL_AGENT)) continue;
+
+            if(className.equals(AstarAgent.class.getName())) {
+                astar = new AstarAgent(player.getId(), planner, AstarAgent.DEFAULT_CLUSTER_SIZE, true);
+                agents.add(astar);
+            } else {
+                agents.add(createAgent(className, player.getId(), player.getAgentClass().getArgument()));
+            }
+        }
+        if(astar == null) {
+            throw new IllegalArgumentException(config.getMap() + " config has no AstarAgent player");
+        }
+
+        Configuration modelConfig = new Configuration();
+        modelConfig.put(ConfigurationValues.MODEL_CONQUEST.key, config.getModelParameters().isConquest());
+        modelConfig.put(ConfigurationValues.MODEL_MIDAS.key, config.getModelParameters().isMidas());
+        modelConfig.put(ConfigurationValues.MODEL_MANIFEST_DESTINY.key, config.getModelParameters().isManifestDestiny());
+        modelConfig.put(ConfigurationValues.MODEL_TIME_LIMIT.key, turnLimit);
+
+        SimpleModel model = new SimpleModel(stateCreator.createState(), seed, stateCreator, modelConfig);
+        Environment environment = new Environment(agents.toArray(new Agent[agents.size()]), model, seed);
+
+        environment.forceNewEpisode();
+        while(!environment.isTerminated() && !astar.isDone()
+                && model.getState().getTurnNumber() < turnLimit) {
+            environment.step();
+        }
+        environment.terminalStep();
+
+        // without an enemy footman SEPIA ends the episode itself as soon as the townhall falls
+        boolean won = astar.isTownhallDestroyed()
+                || model.getState().getView(Agent.OBSERVER_ID).getUnit(astar.townhallID) == null;
+
+        Result result = new Result();
+        result.outcome = won ? "win" : astar.isDone() ? "no_path" : "timeout";
+        result.turns = model.getState().getTurnNumber();
+        result.replans = astar.getTotalReplans();
+        result.planTime = astar.getTotalPlanTime();
+        result.executionTime = astar.getTotalExecutionTime();
+        return result;
+    }
+
+    /**
+     * Builds an agent the way SEPIA does from a config, with (playernum, String[]) if it
+     * has arguments and (playernum) otherwise.
+     */
+    private static Agent createAgent(String className, int playernum, List<String> arguments)
+            throws ReflectiveOperationException
+    {
+        Class<?> agentClass = Class.forName(className);
+        if(!arguments.isEmpty()) {
+            return (Agent) agentClass.getConstructor(int.class, String[].class)
+                    .newInstance(playernum, arguments.toArray(new String[arguments.size()]));
+        }
+        return (Agent) agentClass.getConstructor(int.class).newInstance(playernum);
+    }
+
+    /**
+     * @return the value at or below which the given percent of the values fall
+     */
+    private static long percentile(long[] values, int percent)
+    {
+        if(values.length == 0) return 0;
+
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    private static List<String> defaultConfigs()
+    {
+        List<String> configs = new ArrayList<String>();
+        File[] files = new File("data").listFiles((dir, name) -> name.startsWith("maze_") && name.endsWith("_config.xml"));
+        if(files != null) {
+            Arrays.sort(files);
+            for(File file : files) {
+                configs.add(file.getPath());
+            }
+        }
+        return configs;
+    }
+}
@@ -0,0 +1,117 @@
+package edu.cwru.sepia.agent;
+
+/**
+ * The path an agent is currently walking, kept as packed tile indices with a cursor
+ * to the next move plus a bitmap of the tiles still ahead.
+ *
+ * Taking the next move and asking whether a tile lies on the rest of the path are both
+ * constant time and neither allocates. The buffer only grows when a longer path is set.
+ */
+class PlannedPath {
+
+    private final int width;
+    private final long[] remaining;
+
+    private int[] cells = new int[64];
+    private int length = 0;
+    private int cursor = 0;
+    private boolean found = false;
+
+    PlannedPath(int width, int height)
+    {
+        this.width = width;
+        remaining = new long[(width * height + 63) >>> 6];
+    }
+
+    /**
+     * Replaces the path with the output of a planner.
+     *
+     * @param path tiles in walking order, or null when the planner found no path
+     */
+    void set(int[] path)
+    {
+        clear();
+        if(path == null) return;
+
+        if(path.length > cells.length) {
+            cells = new int[Math.max(path.length, cells.length * 2)];
+        }
+        System.arraycopy(path, 0, cells, 0, path.length);
+        length = path.length;
+        found = true;
+
+        for(int i = 0; i < length; i++) {
+            remaining[cells[i] >>> 6] |= 1L << cells[i];
+        }
+    }
+
+    /**
+     * Drops the rest of the path, only touching the bits that are still set.
+     */
+    void clear()
+    {
+        for(int i = cursor; i < length; i++) {
+            remaining[cells[i] >>> 6] &= ~(1L << cells[i]);
+        }
+        length = 0;
+        cursor = 0;
+        found = false;
+    }
+
+    /**
+     * @return false if the last planner call could not reach the goal
+     */
+    boolean isFound()
+    {
+        return found;
+    }
+
+    boolean isEmpty()
+    {
+        return cursor >= length;
+    }
+
+    /**
+     * @return the tile of the next move without consuming it
+     */
+    int peek()
+    {
+        return cells[cursor];
+    }
+
+    /**
+     * @return the tile of the next move, which is then no longer part of the path
+     */
+    int next()
+    {
+        int cell = cells[cursor++];
+        remaining[cell >>> 6] &= ~(1L << cell);
+        return cell;
+    }
+
+    /**
+     * @return true if the tile is one of the moves still ahead
+     */
+    boolean contains(int cell)
+    {
+        return cell >= 0 && (remaining[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return the number of moves still ahead
+     */
+    int size()
+    {
+        return length - cursor;
+    }
+
+    int x(int cell)
+    {
+        return cell % width;
+    }
+
+    int y(int cell)
+    {
+        return cell / width;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.cwru.sepia.agent.minimax;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.util.Direction;
+
+import java.util.Arrays;
+
+/**
+ * Every step and attack a unit can be given during a game, created once so move
+ * generation only looks them up.
+ *
+ * For each unit and tile the table holds the steps to the neighbouring tiles that are on
+ * the map and free of obstacles, north, east, south then west, and for each pair of units
+ * the attack of one on the other. Each action comes with its MoveOrdering.actionKey so a
+ * move's key is a sum of two lookups. The actions are never changed, so the same instances
+ * go into every move of every state and every search thread, and on to SEPIA.
+ */
+class ActionTable {
+
+    private static final Direction[] DIRECTIONS = {Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+
+    private static ActionTable last;
+
+    private final boolean[][] obstacles;
+    private final int width;
+    private final int height;
+    private final int unitCount;
+
+    // indexed by id * cells + x + y * width
+    private final Action[][] steps;
+    private final long[][] stepKeys;
+    // indexed by attacker * unitCount + target
+    private final Action[] attacks;
+    private final long[] attackKeys;
+
+    private ActionTable(boolean[][] obstacles, int unitCount) {
+        this.obstacles = obstacles;
+        this.width = obstacles.length;
+        this.height = width == 0 ? 0 : obstacles[0].length;
+        this.unitCount = unitCount;
+
+        int cells = width * height;
+        steps = new Action[unitCount * cells][];
+        stepKeys = new long[unitCount * cells][];
+        Action[] neighbours = new Action[DIRECTIONS.length];
+        for (int id = 0; id < unitCount; id++) {
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    int count = 0;
+                    for (Direction direction : DIRECTIONS) {
+                        int newX = x + direction.xComponent();
+                        int newY = y + direction.yComponent();
+                        if (newX >= 0 && newX < width && newY >= 0 && newY < height && !obstacles[newX][newY]) {
+                            neighbours[count++] = Action.createCompoundMove(id, newX, newY);
+                        }
+                    }
+                    int index = id * cells + x + y * width;
+                    steps[index] = Arrays.copyOf(neighbours, count);
+                    stepKeys[index] = keysOf(steps[index]);
+                }
+            }
+        }
+
+        attacks = new Action[unitCount * unitCount];
+        for (int attacker = 0; attacker < unitCount; attacker++) {
+            for (int target = 0; target < unitCount; target++) {
+                attacks[attacker * unitCount + target] = Action.createCompoundAttack(attacker, target);
+            }
+        }
+        attackKeys = keysOf(attacks);
+    }
+
+    /**
+     * @param obstacles obstacles[x][y] is true for blocked tiles
+     * @param unitCount one more than the largest unit id
+     * @return the table for the map, the same instance as last turn if nothing changed
+     */
+    static synchronized ActionTable forMap(boolean[][] obstacles, int unitCount) {
+        if (last == null || last.unitCount < unitCount || !Arrays.deepEquals(last.obstacles, obstacles)) {
+            last = new ActionTable(obstacles, unitCount);
+        }
+        return last;
+    }
+
+    private static long[] keysOf(Action[] actions) {
+        long[] keys = new long[actions.length];
+        for (int i = 0; i < actions.length; i++) {
+            keys[i] = MoveOrdering.actionKey(actions[i]);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the unit's steps from the tile to its free neighbours, shared, not to be
+     *         changed
+     */
+    Action[] steps(int id, int x, int y) {
+        return steps[id * width * height + x + y * width];
+    }
+
+    /**
+     * @return the keys of steps(id, x, y), in the same order
+     */
+    long[] stepKeys(int id, int x, int y) {
+        return stepKeys[id * width * height + x + y * width];
+    }
+
+    Action attack(int attacker, int target) {
+        return attacks[attacker * unitCount + target];
+    }
+
+    long attackKey(int attacker, int target) {
+        return attackKeys[attacker * unitCount + target];
+    }
+}
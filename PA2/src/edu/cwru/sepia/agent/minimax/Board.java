@@ -0,0 +1,597 @@
+package edu.cwru.sepia.agent.minimax;
+
+import java.util.*;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.action.DirectedAction;
+import edu.cwru.sepia.action.LocatedAction;
+import edu.cwru.sepia.action.TargetedAction;
+import edu.cwru.sepia.agent.AgentMetrics;
+import edu.cwru.sepia.util.Direction;
+
+/**
+ * A mutable copy of a GameState for the search to walk the tree with. Units are kept in
+ * parallel int arrays, footmen first and archers after them, and a move is played with
+ * make and taken back with unmake, so one Board is reused for every node of a search
+ * instead of building a GameState per child. The old positions and health a move
+ * overwrites are kept on an undo stack, as is the hash before it. The features of the
+ * utility are updated for just the units a move changes, by make and again by unmake
+ * as it puts them back.
+ *
+ * Move generation and the utility are the same as GameState's, which uses a Board for
+ * both.
+ */
+class Board {
+
+    private final int mapDimX;
+    private final int mapDimY;
+    private final ActionTable actionTable;
+    private final boolean noObstacles;
+    private final DistanceOracle distances;
+    private final ZobristKeys zobrist;
+
+    // units [0, footmen) are footmen, [footmen, units) archers
+    private final int footmen;
+    private final int units;
+    private final int[] ids;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] hps;
+    private final int[] slotOfId;
+
+    private boolean ourTurn;
+    private long hash;
+
+    // the utility features: the sums of getUtility and the number of living footmen, then
+    // for each living footman its closest living archer, the distance to it, whether it is
+    // within range and the squared straight line distance, then for each archer (after one
+    // entry for none) the number of footmen it is closest to. Dead units count for nothing,
+    // as they are simply gone from the state SEPIA gives us next turn
+    private static final int FOOTMEN_HEALTH = 0;
+    private static final int ARCHER_HEALTH = 1;
+    private static final int MEATSHIELDING = 2;
+    private static final int WITHIN_ARCHER_RANGE = 3;
+    private static final int TOTAL_DISTANCE = 4;
+    private static final int LIVING_FOOTMEN = 5;
+    private static final int FOOTMAN_FEATURES = 6;
+    private static final int CLOSEST_ARCHER = 0;
+    private static final int CLOSEST_DISTANCE = 1;
+    private static final int CLOSEST_WITHIN_RANGE = 2;
+    private static final int CLOSEST_SQUARED_DISTANCE = 3;
+    private static final int PER_FOOTMAN = 4;
+    private final int chasers;
+    private final int[] features;
+
+    // slot, x, y and hp of every unit a move changed, and the hash before each move
+    private int[] undo = new int[64];
+    private int undoTop;
+    private long[] hashes = new long[16];
+    private int movesMade;
+
+    // getMoves' list and every Move it has filled in for each number of moves made, and
+    // the actions and scores of the two units it combines
+    private final List<List<Move>> moveLists = new ArrayList<>();
+    private final List<List<Move>> movePools = new ArrayList<>();
+    private final Action[] firstActions;
+    private final long[] firstKeys;
+    private final int[] firstScores;
+    private final Action[] secondActions;
+    private final long[] secondKeys;
+    private final int[] secondScores;
+
+    Board(int mapDimX, int mapDimY, ActionTable actionTable, DistanceOracle distances, ZobristKeys zobrist,
+          boolean ourTurn, long hash, int footmen, int[] ids, int[] xs, int[] ys, int[] hps) {
+        this.mapDimX = mapDimX;
+        this.mapDimY = mapDimY;
+        this.actionTable = actionTable;
+        this.noObstacles = distances == null;
+        this.distances = distances;
+        this.zobrist = zobrist;
+        this.ourTurn = ourTurn;
+        this.hash = hash;
+        this.footmen = footmen;
+        this.units = ids.length;
+        this.ids = ids;
+        this.xs = xs;
+        this.ys = ys;
+        this.hps = hps;
+
+        int maxId = 0;
+        for (int id : ids) {
+            maxId = Math.max(maxId, id);
+        }
+        slotOfId = new int[maxId + 1];
+        for (int slot = 0; slot < units; slot++) {
+            slotOfId[ids[slot]] = slot;
+        }
+
+        // attacks on every enemy and four steps
+        int unitActions = units + 4;
+        firstActions = new Action[unitActions];
+        firstKeys = new long[unitActions];
+        firstScores = new int[unitActions];
+        secondActions = new Action[unitActions];
+        secondKeys = new long[unitActions];
+        secondScores = new int[unitActions];
+
+        chasers = FOOTMAN_FEATURES + footmen * PER_FOOTMAN;
+        features = new int[chasers + units - footmen + 1];
+        for (int slot = 0; slot < units; slot++) {
+            if (hps[slot] <= 0) {
+                continue;
+            }
+            if (slot < footmen) {
+                features[FOOTMEN_HEALTH] += hps[slot];
+                features[LIVING_FOOTMEN]++;
+                findClosest(slot);
+            } else {
+                features[ARCHER_HEALTH] += hps[slot];
+            }
+        }
+    }
+
+    /**
+     * @return a Board of the same position with its own unit arrays and an empty undo
+     *         stack, for another thread to search from
+     */
+    Board copy() {
+        return new Board(mapDimX, mapDimY, actionTable, distances, zobrist, ourTurn, hash, footmen,
+                ids, xs.clone(), ys.clone(), hps.clone());
+    }
+
+    /**
+     * @return Zobrist hash of the position, the same as a GameState of it would have
+     */
+    long getHash() {
+        return hash;
+    }
+
+    /**
+     * Plays the move's actions, footmen step to the tile they were sent to and the target
+     * of an attack loses AVERAGE_DAMAGE health.
+     */
+    void make(Move move) {
+        play(move.first, move.second, true);
+        AgentMetrics.count(AgentMetrics.Counter.CHILDREN_GENERATED);
+    }
+
+    /**
+     * Takes back the last move made, which must be the one given.
+     */
+    void unmake(Move move) {
+        takeBack(move.second == null ? 1 : 2, true);
+    }
+
+    /**
+     * Plays a turn in which every unit of the side to play may act, unlike the moves of
+     * getMoves, which only ever move two.
+     *
+     * @param actions one action for each of the first count units
+     */
+    void makeTurn(Action[] actions, int count) {
+        startTurn();
+        for (int i = 0; i < count; i++) {
+            playAction(actions[i], true);
+        }
+        endTurn();
+    }
+
+    /**
+     * Takes back the last turn made with makeTurn, which had the given number of actions.
+     */
+    void unmakeTurn(int count) {
+        takeBack(count, true);
+    }
+
+    /**
+     * @param second null if only one unit acts
+     * @param evaluate false to leave the utility features as they are, when the move is
+     *                 taken back before anything else is done
+     */
+    private void play(Action first, Action second, boolean evaluate) {
+        startTurn();
+        playAction(first, evaluate);
+        if (second != null) {
+            playAction(second, evaluate);
+        }
+        endTurn();
+    }
+
+    private void startTurn() {
+        if (movesMade == hashes.length) {
+            hashes = Arrays.copyOf(hashes, movesMade * 2);
+        }
+        hashes[movesMade++] = hash;
+    }
+
+    private void endTurn() {
+        hash ^= zobrist.sideToMove;
+        ourTurn = !ourTurn;
+    }
+
+    private void playAction(Action action, boolean evaluate) {
+        if (action instanceof TargetedAction) {
+            int target = slotOfId[((TargetedAction) action).getTargetId()];
+            save(target);
+            hash ^= unitKey(target);
+            hps[target] -= GameState.AVERAGE_DAMAGE;
+            hash ^= unitKey(target);
+            if (evaluate) {
+                unitChanged(target, xs[target], ys[target], hps[target] + GameState.AVERAGE_DAMAGE);
+            }
+        } else {
+            int unit = slotOfId[action.getUnitId()];
+            save(unit);
+            hash ^= unitKey(unit);
+            if (action instanceof DirectedAction) {
+                Direction direction = ((DirectedAction) action).getDirection();
+                xs[unit] += direction.xComponent();
+                ys[unit] += direction.yComponent();
+            } else {
+                xs[unit] = ((LocatedAction) action).getX();
+                ys[unit] = ((LocatedAction) action).getY();
+            }
+            hash ^= unitKey(unit);
+            if (evaluate) {
+                unitChanged(unit, undo[undoTop - 3], undo[undoTop - 2], hps[unit]);
+            }
+        }
+    }
+
+    private void takeBack(int actions, boolean evaluate) {
+        for (int i = 0; i < actions; i++) {
+            int slot = undo[undoTop - 4];
+            int x = xs[slot];
+            int y = ys[slot];
+            int hp = hps[slot];
+            xs[slot] = undo[undoTop - 3];
+            ys[slot] = undo[undoTop - 2];
+            hps[slot] = undo[undoTop - 1];
+            undoTop -= 4;
+            if (evaluate) {
+                // the features only depend on where the units are, so the same update
+                // run backwards restores them
+                unitChanged(slot, x, y, hp);
+            }
+        }
+        hash = hashes[--movesMade];
+        ourTurn = !ourTurn;
+    }
+
+    private void save(int slot) {
+        if (undoTop + 4 > undo.length) {
+            undo = Arrays.copyOf(undo, undo.length * 2);
+        }
+        undo[undoTop++] = slot;
+        undo[undoTop++] = xs[slot];
+        undo[undoTop++] = ys[slot];
+        undo[undoTop++] = hps[slot];
+    }
+
+    private long unitKey(int slot) {
+        return zobrist.unit(ids[slot], xs[slot] + ys[slot] * mapDimX, hps[slot]);
+    }
+
+    /**
+     * The moves of the side to play. A move combines one action of each of the first two
+     * living units, each move knows the hash of the position it leads to. The actions
+     * come from the ActionTable, and the list and the Moves in it are reused, so nothing
+     * is allocated once the Board has been this many moves deep before.
+     *
+     * @return every move of the side to play, in generation order, in a list that is
+     *         cleared by the next getMoves after the same number of moves made, which also
+     *         fills the same Moves in again
+     */
+    List<Move> getMoves() {
+        while (moveLists.size() <= movesMade) {
+            moveLists.add(new ArrayList<>());
+            movePools.add(new ArrayList<>());
+        }
+        List<Move> moves = moveLists.get(movesMade);
+        List<Move> pool = movePools.get(movesMade);
+        moves.clear();
+
+        int from = ourTurn ? 0 : footmen;
+        int to = ourTurn ? footmen : units;
+        int first = nextLiving(from, to);
+        if (first < 0) {
+            return moves;
+        }
+
+        int firstCount = getUnitActions(first, firstActions, firstKeys, firstScores);
+        int second = nextLiving(first + 1, to);
+        if (second < 0) {
+            for (int i = 0; i < firstCount; i++) {
+                moves.add(newMove(pool, moves.size(), firstActions[i], null,
+                        MoveOrdering.moveKey(firstKeys[i], 0), firstScores[i]));
+            }
+            return moves;
+        }
+
+        int secondCount = getUnitActions(second, secondActions, secondKeys, secondScores);
+        for (int i = 0; i < firstCount; i++) {
+            for (int j = 0; j < secondCount; j++) {
+                moves.add(newMove(pool, moves.size(), firstActions[i], secondActions[j],
+                        MoveOrdering.moveKey(firstKeys[i], secondKeys[j]), firstScores[i] + secondScores[j]));
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @param slots filled in with the living units of the side to play, at least
+     *              getUnitCount long
+     * @return the number of living units of the side to play
+     */
+    int getUnitsToMove(int[] slots) {
+        int count = 0;
+        for (int slot = ourTurn ? 0 : footmen; slot < (ourTurn ? footmen : units); slot++) {
+            if (hps[slot] > 0) {
+                slots[count++] = slot;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fills in the actions of one unit of the side to play and their static scores, as
+     * getMoves combines them.
+     *
+     * @param actions at least getMaxUnitActions long
+     * @return the number of actions
+     */
+    int getUnitActions(int slot, Action[] actions, int[] scores) {
+        return getUnitActions(slot, actions, firstKeys, scores);
+    }
+
+    int getUnitCount() {
+        return units;
+    }
+
+    int getMaxUnitActions() {
+        return firstActions.length;
+    }
+
+    boolean isOurTurn() {
+        return ourTurn;
+    }
+
+    /**
+     * @return true if every footman is dead
+     */
+    boolean footmenDefeated() {
+        return nextLiving(0, footmen) < 0;
+    }
+
+    /**
+     * @return true if every archer is dead
+     */
+    boolean archersDefeated() {
+        return nextLiving(footmen, units) < 0;
+    }
+
+    private int nextLiving(int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (hps[slot] > 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // plays the actions to learn the hash of the child, which the ordering needs first,
+    // and fills in the pool's Move at index, adding one if the pool is that short
+    private Move newMove(List<Move> pool, int index, Action first, Action second, long key, int score) {
+        play(first, second, false);
+        long childHash = hash;
+        takeBack(second == null ? 1 : 2, false);
+        if (index == pool.size()) {
+            pool.add(new Move());
+        }
+        return pool.get(index).set(first, second, childHash, key, score);
+    }
+
+    /**
+     * Fills in the unit's actions with their keys and scores, attacks first, then steps.
+     * Footmen attack adjacent archers, archers footmen within ARCHER_MAX_RANGE steps.
+     * Units killed earlier in the search are not attacked again, their health would keep
+     * dropping and count as progress.
+     *
+     * The score is a static guess at how good the action is for the side to move, much
+     * cheaper than the utility of the child: attacks first, then steps that bring a
+     * footman closer to the nearest archer or take an archer away from the nearest
+     * footman.
+     *
+     * @return the number of actions
+     */
+    private int getUnitActions(int slot, Action[] actions, long[] keys, int[] scores) {
+        int count = 0;
+        int enemies = ourTurn ? footmen : 0;
+        int enemiesEnd = ourTurn ? units : footmen;
+        int range = ourTurn ? 1 : GameState.ARCHER_MAX_RANGE;
+        for (int enemy = enemies; enemy < enemiesEnd; enemy++) {
+            if (hps[enemy] > 0 && steps(slot, enemy) <= range) {
+                actions[count] = actionTable.attack(ids[slot], ids[enemy]);
+                keys[count] = actionTable.attackKey(ids[slot], ids[enemy]);
+                scores[count] = GameState.ATTACK_SCORE;
+                count++;
+            }
+        }
+
+        Action[] steps = actionTable.steps(ids[slot], xs[slot], ys[slot]);
+        long[] stepKeys = actionTable.stepKeys(ids[slot], xs[slot], ys[slot]);
+        int nearest = nearestEnemySteps(xs[slot], ys[slot]);
+        for (int i = 0; i < steps.length; i++) {
+            LocatedAction step = (LocatedAction) steps[i];
+            int closer = nearest - nearestEnemySteps(step.getX(), step.getY());
+            actions[count] = step;
+            keys[count] = stepKeys[i];
+            scores[count] = ourTurn ? closer : -closer;
+            count++;
+        }
+        return count;
+    }
+
+    private int nearestEnemySteps(int x, int y) {
+        int nearest = Integer.MAX_VALUE;
+        for (int enemy = ourTurn ? footmen : 0; enemy < (ourTurn ? units : footmen); enemy++) {
+            if (hps[enemy] > 0) {
+                nearest = Math.min(nearest, rawNumStepsBetween(x, y, xs[enemy], ys[enemy]));
+            }
+        }
+        return nearest == Integer.MAX_VALUE ? 0 : nearest;
+    }
+
+    /**
+     * The weighted features of GameState.getUtility for the position on the board: each
+     * footman is matched with its closest archer, and the steps to it (around obstacles
+     * if there are any), the health on both sides, how many different archers the footmen
+     * go for and how many footmen are already within ARCHER_MIN_RANGE are combined.
+     *
+     * The features are kept up to date as moves are made and unmade, so this only weighs
+     * them.
+     *
+     * @return The weighted linear combination of the features
+     */
+    double getUtility() {
+        AgentMetrics.count(AgentMetrics.Counter.HEURISTIC_CALLS);
+
+        double utility = 0.0;
+        utility += GameState.DISTANCE_WEIGHT * features[TOTAL_DISTANCE];
+        utility += GameState.FOOTMAN_HEALTH_WEIGHT * features[FOOTMEN_HEALTH];
+        // every living footman counts the health of every archer
+        utility += GameState.ENEMY_HEALTH_WEIGHT * (features[LIVING_FOOTMEN] * features[ARCHER_HEALTH]);
+        utility += GameState.MEATSHIELDING_WEIGHT * features[MEATSHIELDING];
+        utility += GameState.WITHIN_ARCHER_RANGE_WEIGHT * features[WITHIN_ARCHER_RANGE];
+        return utility;
+    }
+
+    /**
+     * Updates the features after a unit moved or its health changed, from (oldX, oldY)
+     * with oldHp. A footman that moved looks for its closest archer again, one that died
+     * or came back to life (a kill taken back) drops or adds its terms. An archer that
+     * moved, died or came back is only compared with the closest archer of each footman,
+     * unless it was that archer, then the footman looks again.
+     */
+    private void unitChanged(int slot, int oldX, int oldY, int oldHp) {
+        boolean moved = xs[slot] != oldX || ys[slot] != oldY;
+        boolean wasAlive = oldHp > 0;
+        boolean alive = hps[slot] > 0;
+        if (slot < footmen) {
+            features[FOOTMEN_HEALTH] += Math.max(hps[slot], 0) - Math.max(oldHp, 0);
+            features[LIVING_FOOTMEN] += (alive ? 1 : 0) - (wasAlive ? 1 : 0);
+            if (wasAlive && (moved || !alive)) {
+                forgetClosest(slot);
+            }
+            if (alive && (moved || !wasAlive)) {
+                findClosest(slot);
+            }
+            return;
+        }
+
+        features[ARCHER_HEALTH] += Math.max(hps[slot], 0) - Math.max(oldHp, 0);
+        if (!moved && alive == wasAlive) {
+            return;
+        }
+        for (int footman = 0; footman < footmen; footman++) {
+            if (hps[footman] <= 0) {
+                continue;
+            }
+            int closest = FOOTMAN_FEATURES + footman * PER_FOOTMAN;
+            int closestArcher = features[closest + CLOSEST_ARCHER];
+            int d = squaredDistance(footman, slot);
+            if (closestArcher == slot) {
+                forgetClosest(footman);
+                findClosest(footman);
+            } else if (alive && d < features[closest + CLOSEST_SQUARED_DISTANCE]
+                    || d == features[closest + CLOSEST_SQUARED_DISTANCE] && slot < closestArcher) {
+                // as close as the closest archer, the one listed first wins
+                forgetClosest(footman);
+                rememberClosest(footman, slot, d);
+            }
+        }
+    }
+
+    private void findClosest(int footman) {
+        int closestArcher = -1;
+        int closestSquaredDistance = Integer.MAX_VALUE;
+        for (int archer = footmen; archer < units; archer++) {
+            if (hps[archer] <= 0) {
+                continue;
+            }
+            int d = squaredDistance(footman, archer);
+            if (d < closestSquaredDistance) {
+                closestArcher = archer;
+                closestSquaredDistance = d;
+            }
+        }
+        rememberClosest(footman, closestArcher, closestSquaredDistance);
+    }
+
+    private int squaredDistance(int footman, int archer) {
+        int dx = xs[archer] - xs[footman];
+        int dy = ys[archer] - ys[footman];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Adds the footman's terms for its closest archer, -1 if no archer is alive, and
+     * remembers them for forgetClosest.
+     */
+    private void rememberClosest(int footman, int archer, int squaredDistance) {
+        int closest = FOOTMAN_FEATURES + footman * PER_FOOTMAN;
+        features[closest + CLOSEST_ARCHER] = archer;
+        features[closest + CLOSEST_SQUARED_DISTANCE] = squaredDistance;
+        // another footman already going for the same archer does not shield
+        if (features[chaserSlot(archer)]++ == 0) {
+            features[MEATSHIELDING]++;
+        }
+        if (archer < 0) {
+            return;
+        }
+        if (squaredDistance < GameState.ARCHER_MIN_RANGE * GameState.ARCHER_MIN_RANGE) {
+            features[closest + CLOSEST_WITHIN_RANGE] = 1;
+            features[WITHIN_ARCHER_RANGE]++;
+        } else {
+            features[closest + CLOSEST_WITHIN_RANGE] = 0;
+        }
+        features[closest + CLOSEST_DISTANCE] = distance(footman, archer);
+        features[TOTAL_DISTANCE] += features[closest + CLOSEST_DISTANCE];
+    }
+
+    // takes away what rememberClosest added, the units may have moved since
+    private void forgetClosest(int footman) {
+        int closest = FOOTMAN_FEATURES + footman * PER_FOOTMAN;
+        int archer = features[closest + CLOSEST_ARCHER];
+        if (--features[chaserSlot(archer)] == 0) {
+            features[MEATSHIELDING]--;
+        }
+        if (archer < 0) {
+            return;
+        }
+        features[WITHIN_ARCHER_RANGE] -= features[closest + CLOSEST_WITHIN_RANGE];
+        features[TOTAL_DISTANCE] -= features[closest + CLOSEST_DISTANCE];
+    }
+
+    private int chaserSlot(int archer) {
+        return chasers + (archer < 0 ? 0 : archer - footmen + 1);
+    }
+
+    private int steps(int unit1, int unit2) {
+        return rawNumStepsBetween(xs[unit1], ys[unit1], xs[unit2], ys[unit2]);
+    }
+
+    private int rawNumStepsBetween(int fromX, int fromY, int toX, int toY) {
+        return Math.abs(toX - fromX) + Math.abs(toY - fromY);
+    }
+
+    /**
+     * @return the moves between the units, around the obstacles if there are any
+     */
+    private int distance(int footman, int archer) {
+        if (noObstacles) {
+            return steps(footman, archer);
+        }
+        return distances.distance(xs[footman], ys[footman], xs[archer], ys[archer]);
+    }
+}
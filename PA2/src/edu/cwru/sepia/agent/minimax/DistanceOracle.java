@@ -0,0 +1,101 @@
+package edu.cwru.sepia.agent.minimax;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * True 4-connected move distances between tiles of a map with obstacles, for the
+ * distance feature of the utility.
+ *
+ * The first time a tile is asked about as a target, a breadth-first search from it fills
+ * in the distance from every tile to it, kept as shorts (saturating, -1 if unreachable).
+ * Every later question about that target is an array lookup. Archers only stand on a few
+ * tiles over a game, so only those fields are ever built.
+ *
+ * The obstacles never change during a game, so one instance is shared by every state and
+ * every search thread of it. Two threads that ask about a new target at once may both run
+ * the search, and the second result replaces the first, which is the same.
+ */
+class DistanceOracle {
+
+    private static final short UNREACHABLE = -1;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private static DistanceOracle last;
+
+    private final boolean[][] obstacles;
+    private final int width;
+    private final int height;
+    private final AtomicReferenceArray<short[]> toTarget;
+
+    private DistanceOracle(boolean[][] obstacles) {
+        this.obstacles = obstacles;
+        this.width = obstacles.length;
+        this.height = width == 0 ? 0 : obstacles[0].length;
+        this.toTarget = new AtomicReferenceArray<>(width * height);
+    }
+
+    /**
+     * @param obstacles obstacles[x][y] is true for blocked tiles
+     * @return the oracle for the map, the same instance as last turn if the obstacles are
+     *         the same
+     */
+    static synchronized DistanceOracle forMap(boolean[][] obstacles) {
+        if (last == null || !Arrays.deepEquals(last.obstacles, obstacles)) {
+            last = new DistanceOracle(obstacles);
+        }
+        return last;
+    }
+
+    /**
+     * @return the number of moves from one tile to the other around the obstacles, their
+     *         Manhattan distance if either is off the map or they are not connected
+     */
+    int distance(int fromX, int fromY, int toX, int toY) {
+        int manhattan = Math.abs(toX - fromX) + Math.abs(toY - fromY);
+        if (fromX < 0 || fromX >= width || fromY < 0 || fromY >= height
+                || toX < 0 || toX >= width || toY < 0 || toY >= height) {
+            return manhattan;
+        }
+
+        int target = toX + toY * width;
+        short[] field = toTarget.get(target);
+        if (field == null) {
+            field = bfs(target);
+            toTarget.set(target, field);
+        }
+
+        short d = field[fromX + fromY * width];
+        return d == UNREACHABLE ? manhattan : d;
+    }
+
+    private short[] bfs(int source) {
+        short[] distance = new short[width * height];
+        Arrays.fill(distance, UNREACHABLE);
+
+        int[] queue = new int[width * height];
+        int head = 0, tail = 0;
+        distance[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int nx = cell % width + DX[i];
+                int ny = cell / width + DY[i];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height || obstacles[nx][ny]) {
+                    continue;
+                }
+
+                int next = nx + ny * width;
+                if (distance[next] != UNREACHABLE) {
+                    continue;
+                }
+                distance[next] = (short) Math.min(distance[cell] + 1, Short.MAX_VALUE);
+                queue[tail++] = next;
+            }
+        }
+        return distance;
+    }
+}
@@ -2,20 +2,92 @@ package edu.cwru.sepia.agent.minimax;
 
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.agent.Agent;
+import edu.cwru.sepia.agent.AgentMetrics;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.state.State;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class MinimaxAlphaBeta extends Agent {
 
+    private static final long serialVersionUID = 1L;
+
     private final int numPlys;
 
+    // wall-clock budget per turn for iterative deepening, 0 searches numPlys every turn
+    private final long budgetNanos;
+    private volatile long deadline = Long.MAX_VALUE;
+
+    /**
+     * Thrown from deep in the search when the turn budget runs out, the unfinished
+     * iteration is thrown away. Shared so that running out of time allocates nothing.
+     */
+    private static class SearchTimeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchTimeout() {
+            super(null, null, false, false);
+        }
+    }
+    private static final SearchTimeout TIMEOUT = new SearchTimeout();
+
+    /**
+     * Thrown inside a sibling search once its split is cancelled, caught where the
+     * sibling was handed to the pool.
+     */
+    private static class SplitAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SplitAborted() {
+            super(null, null, false, false);
+        }
+    }
+    private static final SplitAborted ABORTED = new SplitAborted();
+
+    // a node needs this many plies below it before its siblings are worth a task each
+    private static final int SPLIT_DEPTH = 3;
+
+    // threads searching each turn, the pool is null when the search is serial. Serial
+    // unless the third argument asks for more: the split searches only pay for their
+    // Board copies with a free core per thread, SearchComparison times both
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    private long completedDepths;
+    private int shallowestDepth = Integer.MAX_VALUE;
+
+    private static final int SEARCH_PHASE = 0;
+    private final AgentMetrics metrics = new AgentMetrics("MinimaxAlphaBeta", "search");
+
+    // kept across turns, the Zobrist keys of a map do not change between them
+    private final TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_BITS);
+    // shared by every thread of a parallel search, a lost update only costs ordering
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    // best moves of earlier games for their first turns and small endgames, null if the
+    // file could not be opened
+    private final PositionCache cache;
+    private static final int EARLY_TURNS = 4;
+    private int turn;
+    private int searchedDepth;
+    private long cacheHits;
+
+    // plies of the current search and the nodes visited at each distance from the root
+    private int rootDepth;
+    private final long[] nodesAtPly = new long[MoveOrdering.MAX_PLY + 1];
+
     public MinimaxAlphaBeta(int playernum, String[] args) {
         super(playernum);
 
@@ -24,27 +96,74 @@ public class MinimaxAlphaBeta extends Agent {
             System.exit(1);
         }
 
-        numPlys = Integer.parseInt(args[0]);
+        numPlys = Math.min(Integer.parseInt(args[0]), MoveOrdering.MAX_PLY);
+        budgetNanos = args.length > 1 ? Long.parseLong(args[1]) * 1000000L : 0;
+        threads = args.length > 2 ? Math.max(Integer.parseInt(args[2]), 1) : 1;
+        pool = threads > 1 ? metrics.newPool(threads) : null;
+
+        PositionCache opened = null;
+        try {
+            opened = PositionCache.open(PositionCache.DEFAULT_FILE);
+        } catch(IOException ex) {
+            System.err.println("Failed to open the position cache. Reason: " + ex.getMessage());
+        }
+        cache = opened;
     }
 
     @Override
     public Map<Integer, Action> initialStep(State.StateView newstate, History.HistoryView statehistory) {
+        metrics.reset();
+        completedDepths = 0;
+        shallowestDepth = Integer.MAX_VALUE;
+        Arrays.fill(nodesAtPly, 0);
+        turn = 0;
+        cacheHits = 0;
         return middleStep(newstate, statehistory);
     }
 
     @Override
     public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
-        GameStateChild bestChild = alphaBetaSearch(new GameStateChild(newstate),
-                numPlys,
-                Double.NEGATIVE_INFINITY,
-                Double.POSITIVE_INFINITY);
+        long startTime = metrics.start();
+        ordering.newTurn();
+        GameStateChild root = new GameStateChild(newstate);
+        GameStateChild bestChild = cachedMove(root);
+        if (bestChild != null) {
+            cacheHits++;
+        } else {
+            if (budgetNanos > 0) {
+                bestChild = iterativeDeepening(root, startTime + budgetNanos);
+            } else {
+                bestChild = alphaBetaSearch(root,
+                        numPlys,
+                        Double.NEGATIVE_INFINITY,
+                        Double.POSITIVE_INFINITY);
+                searchedDepth = numPlys;
+            }
+            remember(root, bestChild);
+        }
+        turn++;
 
+        metrics.add(SEARCH_PHASE, metrics.stepFinished(startTime));
         return bestChild.action;
     }
 
     @Override
     public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
-
+        metrics.dump();
+        System.out.println(String.format("  %-18s %14d of %d probes", "table hits", table.getHits(), table.getProbes()));
+        System.out.println(String.format("  %-18s %14d", "search threads", threads));
+        System.out.println(String.format("  %-18s %14d of %d turns", "cached moves", cacheHits, metrics.getSteps()));
+        if (cache != null) {
+            cache.flush();
+        }
+        if (budgetNanos > 0 && metrics.getSteps() > 0) {
+            System.out.println(String.format("  %-18s %14.2f average, %d shallowest", "completed depth",
+                    (double) completedDepths / metrics.getSteps(), shallowestDepth));
+        }
+        for (int ply = 0; ply < nodesAtPly.length && nodesAtPly[ply] > 0; ply++) {
+            String branching = ply == 0 ? "" : String.format(", branching %.2f", (double) nodesAtPly[ply] / nodesAtPly[ply - 1]);
+            System.out.println(String.format("  %-18s %14d nodes%s", "ply " + ply, nodesAtPly[ply], branching));
+        }
     }
 
     @Override
@@ -57,6 +176,46 @@ public class MinimaxAlphaBeta extends Agent {
 
     }
 
+    /**
+     * @return the move the cache has for the state from a search at least numPlys deep,
+     *         null if it has none
+     */
+    private GameStateChild cachedMove(GameStateChild node) {
+        if (cache == null) {
+            return null;
+        }
+        long bestMove = cache.bestMove(cacheKey(node.state), numPlys);
+        if (bestMove == 0) {
+            return null;
+        }
+        for (Move move : node.state.getMoves()) {
+            if (move.hash == bestMove) {
+                return node.state.play(move);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the move searched for one of the first EARLY_TURNS turns of a game, where
+     * all the units are alive and a search costs the most, or for an endgame of one
+     * footman against one archer, which comes up again and again.
+     */
+    private void remember(GameStateChild node, GameStateChild bestChild) {
+        // a state with no moves is its own best child
+        if (cache == null || bestChild == node) {
+            return;
+        }
+        boolean endgame = node.state.getFootmanCount() <= 1 && node.state.getArcherCount() <= 1;
+        if (turn < EARLY_TURNS || endgame) {
+            cache.store(cacheKey(node.state), bestChild.state.getHash(), searchedDepth);
+        }
+    }
+
+    private long cacheKey(GameState state) {
+        return state.getHash() ^ PositionCache.mapKey(state.obstacles);
+    }
+
     /**
      * You will implement this.
      *
@@ -73,14 +232,86 @@ public class MinimaxAlphaBeta extends Agent {
      * @return The best child of this node with updated values
      */
     public GameStateChild alphaBetaSearch(GameStateChild node, int depth, double alpha, double beta) {
-        double value = maxValue(node, depth, alpha, beta);
+        startSearch(depth);
+        double value = search(node.state.toBoard(), depth, alpha, beta);
+
+        // the search left the best move of the root in the table
+        TranspositionTable.Entry entry = new TranspositionTable.Entry();
+        if (table.probe(node.state.getHash(), entry) && entry.bestMove != 0) {
+            for (Move move : node.state.getMoves()) {
+                if (move.hash == entry.bestMove) {
+                    return node.state.play(move);
+                }
+            }
+        }
         return valueToState(value, node);
     }
 
+    /**
+     * Makes the node a search starts from ply 0 of the per-ply counters and move ordering,
+     * which hold MoveOrdering.MAX_PLY plies.
+     */
+    private void startSearch(int depth) {
+        if (depth < 0 || depth > MoveOrdering.MAX_PLY) {
+            throw new IllegalArgumentException("Search depth must be between 0 and " + MoveOrdering.MAX_PLY
+                    + ", not " + depth);
+        }
+        rootDepth = depth;
+    }
+
+    /**
+     * Runs maxValue from the root, on the pool when the search is parallel so that nodes
+     * can fork their siblings onto it.
+     */
+    private double search(Board board, int depth, double alpha, double beta) {
+        Searcher searcher = new Searcher(board, null);
+        try {
+            if (pool == null) {
+                return searcher.maxValue(depth, alpha, beta);
+            }
+            Callable<Double> root = () -> searcher.maxValue(depth, alpha, beta);
+            return pool.invoke(ForkJoinTask.adapt(root));
+        } finally {
+            searcher.addNodes();
+        }
+    }
+
+    /**
+     * Searches 1, 2, ... plies deep until numPlys or until the deadline passes, and returns
+     * the best move of the deepest search that finished. Each search starts from the best
+     * move of the one before it, which is the root's best move in the transposition table.
+     *
+     * The first iteration always runs to the end so there is a move to return even when
+     * the budget is smaller than one ply.
+     *
+     * @param node the current state
+     * @param deadline System.nanoTime() at which to stop searching deeper
+     * @return The best child found by the deepest completed search
+     */
+    private GameStateChild iterativeDeepening(GameStateChild node, long deadline) {
+        this.deadline = Long.MAX_VALUE;
+        GameStateChild best = alphaBetaSearch(node, 1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        int depth = 1;
+
+        this.deadline = deadline;
+        try {
+            while (depth < numPlys && System.nanoTime() < deadline) {
+                best = alphaBetaSearch(node, depth + 1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                depth++;
+            }
+        } catch (SearchTimeout e) {
+            // keep the move from the last search that finished
+        }
+        this.deadline = Long.MAX_VALUE;
+
+        searchedDepth = depth;
+        completedDepths += depth;
+        shallowestDepth = Math.min(shallowestDepth, depth);
+        return best;
+    }
 
     /**
      * Max Node helper function
-     * Implements alpha-beta logic for maximizing state value
      *
      * @param node
      * @param depth
@@ -89,23 +320,17 @@ public class MinimaxAlphaBeta extends Agent {
      * @return maximum value of the best reachable state
      */
     public double maxValue(GameStateChild node, int depth, double alpha, double beta) {
-        List<GameStateChild> children = node.state.getChildren();
-        if (depth <= 0 || children.size() == 0) {
-            return node.state.getUtility();
-        }
-
-        double bestValue = -Double.MAX_VALUE; //temp value at negative infinity
-        for (GameStateChild child : orderChildrenWithHeuristics(children)) { //for each child of node (possible actions)
-            double testValue = minValue(child, decrement(depth), alpha, beta);
-            bestValue = Math.max(bestValue, testValue);
-            alpha = Math.max(alpha, bestValue);
+        startSearch(depth);
+        Searcher searcher = new Searcher(node.state.toBoard(), null);
+        try {
+            return searcher.maxValue(depth, alpha, beta);
+        } finally {
+            searcher.addNodes();
         }
-        return bestValue;
     }
 
     /**
      * Min Node helper function
-     * Implements alpha-beta logic for minimizing state value
      *
      * @param node
      * @param depth
@@ -114,18 +339,391 @@ public class MinimaxAlphaBeta extends Agent {
      * @return minimum value of the best reachable state
      */
     public double minValue(GameStateChild node, int depth, double alpha, double beta) {
-        List<GameStateChild> children = node.state.getChildren();
-        if (depth <= 0 || children.size() == 0) {
-            return node.state.getUtility();
+        startSearch(depth);
+        Searcher searcher = new Searcher(node.state.toBoard(), null);
+        try {
+            return searcher.minValue(depth, alpha, beta);
+        } finally {
+            searcher.addNodes();
+        }
+    }
+
+    /**
+     * One thread's part of a search. The root Searcher walks the whole tree when the
+     * search is serial; in a parallel search every sibling handed to the pool gets a
+     * Searcher of its own, with a copy of the Board, that searches below it.
+     *
+     * The search plays its moves on the Searcher's Board, making each move before searching
+     * the child and unmaking it after. Moves are ordered on cheap keys before any is made,
+     * so moves after a cutoff are never played at all. A timeout leaves the Board
+     * mid-search, it is thrown away with the rest of the iteration.
+     */
+    private final class Searcher {
+
+        private final Board board;
+        // the split this Searcher searches a sibling of, null for the root
+        private final Split split;
+        private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+        private final long[] nodes = new long[MoveOrdering.MAX_PLY + 1];
+        // scratch for ordering the moves at each ply, grown to the most moves seen there
+        private final long[][] orderScores = new long[MoveOrdering.MAX_PLY + 1][];
+
+        Searcher(Board board, Split split) {
+            this.board = board;
+            this.split = split;
         }
 
-        double bestValue = Double.MAX_VALUE; //temp value at infinity
-        for (GameStateChild child : orderChildrenWithHeuristics(children)) {
-            double testValue = maxValue(child, decrement(depth), alpha, beta);
-            bestValue = Math.min(bestValue, testValue);
-            beta = Math.min(beta, bestValue);
+        /**
+         * Implements alpha-beta logic for maximizing state value
+         *
+         * The first child, the most promising one after ordering, is searched with the full
+         * window. Every later child is first searched with a null window just above alpha,
+         * which only proves it is no better; the few that turn out better are searched again
+         * with the full window (principal variation search). The loop stops as soon as alpha
+         * reaches beta, the min node above would never let play reach here.
+         *
+         * In a parallel search the remaining children of a deep enough node are handed to
+         * the pool once the first one is done (young brothers wait), all with the window
+         * the first child left.
+         */
+        double maxValue(int depth, double alpha, double beta) {
+            int ply = rootDepth - depth;
+            nodes[ply]++;
+            if (depth <= 0) {
+                return board.getUtility();
+            }
+            checkClock();
+
+            long hash = board.getHash();
+            long bestMove = 0;
+            if (table.probe(hash, entry)) {
+                if (entry.depth >= depth && boundHolds(entry, alpha, beta)) {
+                    return entry.value;
+                }
+                bestMove = entry.bestMove;
+            }
+
+            List<Move> moves = board.getMoves();
+            if (moves.isEmpty()) {
+                return board.getUtility();
+            }
+            AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED);
+            ordering.order(moves, ply, bestMove, orderScores(ply, moves.size()));
+
+            double originalAlpha = alpha;
+            double bestValue = -Double.MAX_VALUE; //temp value at negative infinity
+            for (int i = 0; i < moves.size(); i++) { //for each child of node (possible actions)
+                if (i > 0 && splitsAt(depth, moves.size() - i)) {
+                    Split siblings = searchSiblings(moves.subList(i, moves.size()), depth, alpha, beta, true);
+                    if (siblings.bestMove != null && siblings.bestValue > bestValue) {
+                        bestValue = siblings.bestValue;
+                        bestMove = siblings.bestMove.hash;
+                        if (bestValue >= beta) {
+                            ordering.cutoff(siblings.bestMove, ply, depth);
+                        }
+                    }
+                    break;
+                }
+
+                Move move = moves.get(i);
+                double testValue = searchChild(move, depth, alpha, beta, true, i == 0);
+                if (testValue > bestValue) {
+                    bestValue = testValue;
+                    bestMove = move.hash;
+                }
+                alpha = Math.max(alpha, bestValue);
+                if (alpha >= beta) {
+                    ordering.cutoff(move, ply, depth);
+                    break;
+                }
+            }
+
+            table.store(hash, depth, bestValue, bound(bestValue, originalAlpha, beta), bestMove);
+            return bestValue;
+        }
+
+        /**
+         * Implements alpha-beta logic for minimizing state value
+         *
+         * The mirror of maxValue: later children get a null window just below beta and the
+         * loop stops once beta falls to alpha.
+         */
+        double minValue(int depth, double alpha, double beta) {
+            int ply = rootDepth - depth;
+            nodes[ply]++;
+            if (depth <= 0) {
+                return board.getUtility();
+            }
+            checkClock();
+
+            long hash = board.getHash();
+            long bestMove = 0;
+            if (table.probe(hash, entry)) {
+                if (entry.depth >= depth && boundHolds(entry, alpha, beta)) {
+                    return entry.value;
+                }
+                bestMove = entry.bestMove;
+            }
+
+            List<Move> moves = board.getMoves();
+            if (moves.isEmpty()) {
+                return board.getUtility();
+            }
+            AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED);
+            ordering.order(moves, ply, bestMove, orderScores(ply, moves.size()));
+
+            double originalBeta = beta;
+            double bestValue = Double.MAX_VALUE; //temp value at infinity
+            for (int i = 0; i < moves.size(); i++) {
+                if (i > 0 && splitsAt(depth, moves.size() - i)) {
+                    Split siblings = searchSiblings(moves.subList(i, moves.size()), depth, alpha, beta, false);
+                    if (siblings.bestMove != null && siblings.bestValue < bestValue) {
+                        bestValue = siblings.bestValue;
+                        bestMove = siblings.bestMove.hash;
+                        if (bestValue <= alpha) {
+                            ordering.cutoff(siblings.bestMove, ply, depth);
+                        }
+                    }
+                    break;
+                }
+
+                Move move = moves.get(i);
+                double testValue = searchChild(move, depth, alpha, beta, false, i == 0);
+                if (testValue < bestValue) {
+                    bestValue = testValue;
+                    bestMove = move.hash;
+                }
+                beta = Math.min(beta, bestValue);
+                if (beta <= alpha) {
+                    ordering.cutoff(move, ply, depth);
+                    break;
+                }
+            }
+
+            table.store(hash, depth, bestValue, bound(bestValue, alpha, originalBeta), bestMove);
+            return bestValue;
+        }
+
+        /**
+         * Plays the move and searches the child below a max (or min) node. Only the first
+         * child gets the full window, the others a null window first.
+         */
+        private double searchChild(Move move, int depth, double alpha, double beta, boolean maximizing, boolean first) {
+            board.make(move);
+            double value;
+            if (maximizing) {
+                if (first) {
+                    value = minValue(decrement(depth), alpha, beta);
+                } else {
+                    value = minValue(decrement(depth), alpha, Math.nextUp(alpha));
+                    if (value > alpha && value < beta) {
+                        value = minValue(decrement(depth), alpha, beta);
+                    }
+                }
+            } else {
+                if (first) {
+                    value = maxValue(decrement(depth), alpha, beta);
+                } else {
+                    value = maxValue(decrement(depth), Math.nextDown(beta), beta);
+                    if (value < beta && value > alpha) {
+                        value = maxValue(decrement(depth), alpha, beta);
+                    }
+                }
+            }
+            board.unmake(move);
+            return value;
+        }
+
+        /**
+         * Searches the moves in parallel, each from a copy of this Searcher's Board, and
+         * waits for all of them. The searches that are not taken by other threads are run
+         * by this one while it waits.
+         *
+         * @return the split, holding the best move found and its value
+         */
+        private Split searchSiblings(List<Move> siblings, int depth, double alpha, double beta, boolean maximizing) {
+            Split siblingSplit = new Split(split, maximizing, alpha, beta);
+            List<SiblingSearch> searches = new ArrayList<>(siblings.size());
+            for (Move move : siblings) {
+                searches.add(new SiblingSearch(board, siblingSplit, move, depth));
+            }
+
+            // forked last to first, so this thread takes them back best ordered first
+            for (int i = searches.size() - 1; i > 0; i--) {
+                searches.get(i).fork();
+            }
+            RuntimeException failure = null;
+            for (int i = 0; i < searches.size(); i++) {
+                try {
+                    if (i == 0) {
+                        searches.get(i).invoke();
+                    } else {
+                        searches.get(i).join();
+                    }
+                } catch (RuntimeException e) {
+                    // a timeout, stop the other siblings and pass it on once they have
+                    siblingSplit.cancel();
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            checkCancelled();
+            return siblingSplit;
+        }
+
+        private long[] orderScores(int ply, int size) {
+            if (orderScores[ply] == null || orderScores[ply].length < size) {
+                orderScores[ply] = new long[size];
+            }
+            return orderScores[ply];
+        }
+
+        private boolean splitsAt(int depth, int remaining) {
+            return pool != null && depth >= SPLIT_DEPTH && remaining > 1;
+        }
+
+        /**
+         * Ends the current search once the turn budget is spent, and this Searcher's part
+         * of it once a sibling has cut off the node it was searching for. Reading the
+         * clock is cheap next to generating the children of a node, so it is read at
+         * every one.
+         */
+        private void checkClock() {
+            if (System.nanoTime() >= deadline) {
+                throw TIMEOUT;
+            }
+            checkCancelled();
+        }
+
+        private void checkCancelled() {
+            if (split != null && split.isCancelled()) {
+                throw ABORTED;
+            }
+        }
+
+        void addNodes() {
+            synchronized (nodesAtPly) {
+                for (int ply = 0; ply < nodes.length; ply++) {
+                    nodesAtPly[ply] += nodes[ply];
+                }
+            }
+        }
+    }
+
+    /**
+     * The younger siblings of a node, searched in parallel with the window the first
+     * child left. A sibling that cuts off the node cancels the split, and every search
+     * below a cancelled split stops at its next node.
+     */
+    private static final class Split {
+
+        private final Split parent;
+        private final boolean maximizing;
+        private final double alpha;
+        private final double beta;
+        private volatile boolean cancelled;
+
+        private double bestValue;
+        private Move bestMove;
+
+        Split(Split parent, boolean maximizing, double alpha, double beta) {
+            this.parent = parent;
+            this.maximizing = maximizing;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.bestValue = maximizing ? -Double.MAX_VALUE : Double.MAX_VALUE;
+        }
+
+        synchronized void report(Move move, double value) {
+            if (bestMove == null || (maximizing ? value > bestValue : value < bestValue)) {
+                bestValue = value;
+                bestMove = move;
+            }
+            if (maximizing ? value >= beta : value <= alpha) {
+                cancelled = true;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            for (Split split = this; split != null; split = split.parent) {
+                if (split.cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Searches one sibling of a split with a Searcher of its own.
+     */
+    private final class SiblingSearch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board parentBoard;
+        private final Split split;
+        private final Move move;
+        private final int depth;
+
+        SiblingSearch(Board parentBoard, Split split, Move move, int depth) {
+            this.parentBoard = parentBoard;
+            this.split = split;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (split.isCancelled()) {
+                return;
+            }
+            // the parent's Board is not changed until every sibling has finished
+            Searcher searcher = new Searcher(parentBoard.copy(), split);
+            try {
+                split.report(move, searcher.searchChild(move, depth, split.alpha, split.beta, split.maximizing, false));
+            } catch (SplitAborted e) {
+                // a sibling already cut off the node, or a split above it was cancelled
+            } finally {
+                searcher.addNodes();
+            }
+        }
+    }
+
+    /**
+     * @return true if the stored value can stand in for a search with this window: it is
+     *         exact, or a bound that already falls outside the window
+     */
+    private boolean boundHolds(TranspositionTable.Entry entry, double alpha, double beta) {
+        switch (entry.bound) {
+            case TranspositionTable.LOWER_BOUND:
+                return entry.value >= beta;
+            case TranspositionTable.UPPER_BOUND:
+                return entry.value <= alpha;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return whether a value found with the (alpha, beta) window is exact or only a bound
+     */
+    private byte bound(double value, double alpha, double beta) {
+        if (value <= alpha) {
+            return TranspositionTable.UPPER_BOUND;
+        } else if (value >= beta) {
+            return TranspositionTable.LOWER_BOUND;
         }
-        return bestValue;
+        return TranspositionTable.EXACT;
     }
 
     /**
@@ -193,7 +791,7 @@ public class MinimaxAlphaBeta extends Agent {
     }
 
     private int decrement(int n){
-        return Math.min(n, 1) - 1;
+        return n - 1;
     }
 
 }
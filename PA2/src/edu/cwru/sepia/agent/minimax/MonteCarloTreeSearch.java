@@ -0,0 +1,514 @@
+package edu.cwru.sepia.agent.minimax;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.agent.Agent;
+import edu.cwru.sepia.agent.AgentMetrics;
+import edu.cwru.sepia.environment.model.history.History;
+import edu.cwru.sepia.environment.model.state.State;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Monte Carlo tree search for the footmen, for games with more units than the two-unit
+ * moves of MinimaxAlphaBeta can cover.
+ *
+ * A turn is split into one decision per living unit of the side to play, so a node has a
+ * child for each action of one unit instead of one for every combination of all their
+ * actions, and the turn is played on the Board once its last unit has chosen. Children
+ * are picked by UCT, one is added per iteration, and from there the game is played on
+ * for ROLLOUT_TURNS turns with a cheap policy: each unit takes its best statically scored
+ * action, and now and then a random one. A rollout is worth 1 to the footmen if every
+ * archer dies or the utility ends up higher than at the root, 0 if every footman dies or
+ * it ends up lower.
+ *
+ * Every thread grows its own tree on its own copy of the Board, and the move is made one
+ * unit at a time from the visits of the same action added up over all the trees. A tree
+ * keeps the part below the position the next turn starts from, if it had reached it.
+ *
+ * Arguments: the search time per turn in milliseconds, then optionally the number of
+ * threads.
+ */
+public class MonteCarloTreeSearch extends Agent {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final int ROLLOUT_TURNS = 8;
+    // chance a rollout unit takes a random action instead of its best scored one
+    private static final double ROLLOUT_RANDOMNESS = 0.25;
+    // a tree stops growing at this many nodes and only runs rollouts below its leaves
+    private static final int MAX_NODES = 1 << 20;
+    // the search stops 1/SEARCH_MARGIN of the budget before the turn is due
+    private static final int SEARCH_MARGIN = 10;
+
+    private final long budgetNanos;
+    private final int threads;
+    private final ForkJoinPool pool;
+    private final Tree[] trees;
+
+    // what this agent did last turn, to find the next root in the trees
+    private Action[] lastMove;
+
+    private long iterations;
+    private long reusedTrees;
+
+    private static final int SEARCH_PHASE = 0;
+    private final AgentMetrics metrics = new AgentMetrics("MonteCarloTreeSearch", "search");
+
+    public MonteCarloTreeSearch(int playernum, String[] args) {
+        super(playernum);
+
+        if (args.length < 1) {
+            System.err.println("You must specify the search time per turn in milliseconds");
+            System.exit(1);
+        }
+
+        budgetNanos = Long.parseLong(args[0]) * 1000000L;
+        threads = args.length > 1 ? Math.max(Integer.parseInt(args[1]), 1) : 1;
+        pool = threads > 1 ? metrics.newPool(threads) : null;
+        trees = new Tree[threads];
+        for (int i = 0; i < threads; i++) {
+            trees[i] = new Tree(i);
+        }
+    }
+
+    @Override
+    public Map<Integer, Action> initialStep(State.StateView newstate, History.HistoryView statehistory) {
+        metrics.reset();
+        iterations = 0;
+        reusedTrees = 0;
+        lastMove = null;
+        for (Tree tree : trees) {
+            tree.root = null;
+        }
+        return middleStep(newstate, statehistory);
+    }
+
+    @Override
+    public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
+        long startTime = metrics.start();
+        // the rest of the budget is left for the iterations running when the search
+        // stops and for choosing the move
+        long deadline = startTime + budgetNanos - budgetNanos / SEARCH_MARGIN;
+
+        Board board = new GameState(newstate).toBoard();
+        for (int i = 0; i < threads; i++) {
+            trees[i].startTurn(i == 0 ? board : board.copy(), lastMove);
+        }
+
+        if (pool == null) {
+            trees[0].search(deadline);
+        } else {
+            List<ForkJoinTask<?>> searches = new ArrayList<>(threads);
+            for (Tree tree : trees) {
+                searches.add(ForkJoinTask.adapt(() -> tree.search(deadline)));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(searches);
+            }));
+        }
+
+        lastMove = chooseMove(board);
+        Map<Integer, Action> actionMap = new HashMap<>();
+        for (Action action : lastMove) {
+            actionMap.put(action.getUnitId(), action);
+        }
+
+        metrics.add(SEARCH_PHASE, metrics.stepFinished(startTime));
+        return actionMap;
+    }
+
+    @Override
+    public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
+        metrics.dump();
+        System.out.println(String.format("  %-18s %14d", "iterations", iterations));
+        System.out.println(String.format("  %-18s %14d of %d", "trees reused", reusedTrees, metrics.getSteps() * threads));
+        System.out.println(String.format("  %-18s %14d", "search threads", threads));
+    }
+
+    @Override
+    public void savePlayerData(OutputStream os) {
+
+    }
+
+    @Override
+    public void loadPlayerData(InputStream is) {
+
+    }
+
+    /**
+     * Picks the action of each footman in turn, the one visited most over all the trees
+     * below the actions already picked. A footman no tree has tried anything for takes
+     * its best scored action.
+     *
+     * @return one action for each living footman that has one
+     */
+    private Action[] chooseMove(Board board) {
+        int[] slots = new int[board.getUnitCount()];
+        Action[] actions = new Action[board.getMaxUnitActions()];
+        int[] scores = new int[actions.length];
+        int count = unitsToMove(board, slots, actions, scores);
+
+        Node[] nodes = new Node[threads];
+        for (int i = 0; i < threads; i++) {
+            nodes[i] = trees[i].root;
+        }
+
+        Action[] move = new Action[count];
+        for (int unit = 0; unit < count; unit++) {
+            int actionCount = board.getUnitActions(slots[unit], actions, scores);
+            int[] visits = new int[actionCount];
+            for (Node node : nodes) {
+                if (node == null) {
+                    continue;
+                }
+                for (int i = 0; i < node.expanded; i++) {
+                    for (int j = 0; j < actionCount; j++) {
+                        if (node.children[i].action == actions[j]) {
+                            visits[j] += node.children[i].visits;
+                        }
+                    }
+                }
+            }
+
+            int best = 0;
+            for (int j = 1; j < actionCount; j++) {
+                if (visits[j] > visits[best] || visits[j] == visits[best] && scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            move[unit] = actions[best];
+
+            for (int i = 0; i < threads; i++) {
+                nodes[i] = nodes[i] == null ? null : nodes[i].child(move[unit]);
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Fills in the living units of the side to play that have an action. A unit boxed in
+     * by obstacles and other units with no enemy in range has none and sits the turn out.
+     *
+     * @return the number of units filled in
+     */
+    private static int unitsToMove(Board board, int[] slots, Action[] actions, int[] scores) {
+        int living = board.getUnitsToMove(slots);
+        int count = 0;
+        for (int i = 0; i < living; i++) {
+            if (board.getUnitActions(slots[i], actions, scores) > 0) {
+                slots[count++] = slots[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A decision of one unit. Its children are the unit's actions, added one per visit in
+     * order of their static score. The reward is the footmen's, summed over the rollouts
+     * that went through the node.
+     */
+    private static final class Node {
+        // the action that led here, null at the root
+        final Action action;
+        // hash of the Board if a turn starts at this node, 0 inside a turn
+        long hash;
+
+        Action[] actions;
+        Node[] children;
+        int expanded;
+
+        int visits;
+        double reward;
+
+        Node(Action action) {
+            this.action = action;
+        }
+
+        Node child(Action action) {
+            for (int i = 0; i < expanded; i++) {
+                if (children[i].action == action) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One thread's tree and the Board it plays iterations out on. Only that thread touches
+     * either while a search runs.
+     */
+    private final class Tree {
+
+        private final Random random;
+
+        Node root;
+        private int nodes;
+
+        private Board board;
+        private double rootUtility;
+
+        // the units of the turn being played and the actions chosen for them so far
+        private int[] slots;
+        private Action[] turn;
+        private int toMove;
+        private int unit;
+
+        // actions of the unit being decided, sorted by score, and the turns made on the
+        // Board in this iteration with their number of actions
+        private Action[] actions;
+        private int[] scores;
+        private int[] turnSizes = new int[64];
+        private int turnsMade;
+
+        private Node[] path = new Node[256];
+
+        Tree(int seed) {
+            this.random = new Random(seed);
+        }
+
+        /**
+         * Takes the position to search from, and keeps the subtree of it if this tree
+         * reached it from last turn's root through the move that was played.
+         */
+        void startTurn(Board board, Action[] lastMove) {
+            this.board = board;
+            this.rootUtility = board.getUtility();
+            slots = new int[board.getUnitCount()];
+            turn = new Action[board.getUnitCount()];
+            actions = new Action[board.getMaxUnitActions()];
+            scores = new int[actions.length];
+
+            Node next = root == null || lastMove == null ? null : reuse(board.getHash(), lastMove);
+            if (next == null) {
+                root = new Node(null);
+                root.hash = board.getHash();
+                nodes = 1;
+            } else {
+                root = next;
+                nodes = size(next);
+                reusedTrees++;
+            }
+        }
+
+        // the nodes left once the rest of the old tree is dropped
+        private int size(Node node) {
+            int size = 1;
+            for (int i = 0; i < node.expanded; i++) {
+                size += size(node.children[i]);
+            }
+            return size;
+        }
+
+        // follows our move to the archers' turn, then looks through their decisions for
+        // the position the game is in now
+        private Node reuse(long hash, Action[] lastMove) {
+            Node node = root;
+            for (Action action : lastMove) {
+                node = node.child(action);
+                if (node == null) {
+                    return null;
+                }
+            }
+            return find(node, hash, 1);
+        }
+
+        private Node find(Node node, long hash, int turns) {
+            if (node.hash != 0) {
+                if (turns == 0) {
+                    return node.hash == hash ? node : null;
+                }
+                turns--;
+            }
+            for (int i = 0; i < node.expanded; i++) {
+                Node found = find(node.children[i], hash, turns);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Runs iterations until the deadline, at least one.
+         */
+        void search(long deadline) {
+            long done = 0;
+            do {
+                iterate();
+                done++;
+            } while (System.nanoTime() < deadline);
+
+            synchronized (MonteCarloTreeSearch.this) {
+                iterations += done;
+            }
+        }
+
+        private void iterate() {
+            Node node = root;
+            int depth = 0;
+            path[depth++] = node;
+            turnsMade = 0;
+            unit = 0;
+
+            double reward;
+            while (true) {
+                if (unit == 0) {
+                    if (board.footmenDefeated() || board.archersDefeated()) {
+                        reward = score();
+                        break;
+                    }
+                    toMove = unitsToMove(board, slots, actions, scores);
+                    if (toMove == 0) {
+                        // nothing can act, score the position as it stands
+                        reward = score();
+                        break;
+                    }
+                }
+                if (node.actions == null) {
+                    addActions(node);
+                }
+
+                if (node.expanded < node.actions.length && nodes < MAX_NODES) {
+                    Node child = new Node(node.actions[node.expanded]);
+                    node.children[node.expanded++] = child;
+                    nodes++;
+                    choose(child);
+                    if (depth == path.length) {
+                        path = Arrays.copyOf(path, depth * 2);
+                    }
+                    path[depth++] = child;
+                    reward = rollout();
+                    break;
+                }
+                if (node.expanded == 0) {
+                    reward = rollout();
+                    break;
+                }
+
+                node = select(node);
+                choose(node);
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = node;
+            }
+
+            for (int i = 0; i < depth; i++) {
+                path[i].visits++;
+                path[i].reward += reward;
+            }
+            while (turnsMade > 0) {
+                board.unmakeTurn(turnSizes[--turnsMade]);
+            }
+        }
+
+        // the unit's actions, the best scored first so they are expanded first
+        private void addActions(Node node) {
+            int count = board.getUnitActions(slots[unit], actions, scores);
+            for (int i = 1; i < count; i++) {
+                Action action = actions[i];
+                int score = scores[i];
+                int j = i;
+                while (j > 0 && scores[j - 1] < score) {
+                    actions[j] = actions[j - 1];
+                    scores[j] = scores[j - 1];
+                    j--;
+                }
+                actions[j] = action;
+                scores[j] = score;
+            }
+            node.actions = Arrays.copyOf(actions, count);
+            node.children = new Node[count];
+        }
+
+        private Node select(Node node) {
+            boolean footmen = board.isOurTurn();
+            double logVisits = Math.log(node.visits);
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < node.expanded; i++) {
+                Node child = node.children[i];
+                double mean = child.reward / child.visits;
+                double value = (footmen ? mean : 1 - mean) + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if (value > bestValue) {
+                    best = child;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        // the node's action is the current unit's, the turn is played after the last one
+        private void choose(Node node) {
+            turn[unit++] = node.action;
+            if (unit == toMove) {
+                finishTurn();
+                node.hash = board.getHash();
+            }
+        }
+
+        private void finishTurn() {
+            board.makeTurn(turn, toMove);
+            if (turnsMade == turnSizes.length) {
+                turnSizes = Arrays.copyOf(turnSizes, turnsMade * 2);
+            }
+            turnSizes[turnsMade++] = toMove;
+            unit = 0;
+        }
+
+        /**
+         * Plays the rest of the current turn and then whole turns with the rollout policy.
+         */
+        private double rollout() {
+            for (int turns = 0; turns < ROLLOUT_TURNS; turns++) {
+                if (unit == 0) {
+                    if (board.footmenDefeated() || board.archersDefeated()) {
+                        break;
+                    }
+                    toMove = unitsToMove(board, slots, actions, scores);
+                }
+                while (unit < toMove) {
+                    int count = board.getUnitActions(slots[unit], actions, scores);
+                    turn[unit++] = actions[policy(count)];
+                }
+                finishTurn();
+            }
+            return score();
+        }
+
+        private int policy(int count) {
+            if (random.nextDouble() < ROLLOUT_RANDOMNESS) {
+                return random.nextInt(count);
+            }
+            int best = 0;
+            for (int i = 1; i < count; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        private double score() {
+            if (board.archersDefeated()) {
+                return 1;
+            }
+            if (board.footmenDefeated()) {
+                return 0;
+            }
+            double utility = board.getUtility();
+            return utility > rootUtility ? 1 : utility < rootUtility ? 0 : 0.5;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.cwru.sepia.agent.minimax;
+
+import edu.cwru.sepia.action.Action;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The unit actions of one side's turn, before they are played. Everything the search needs
+ * to order a move is worked out when the move is generated: the hash of the state it leads
+ * to, its key for the killer and history tables and a cheap static score. The child
+ * GameState itself is only built by GameState.play when the search gets to the move.
+ *
+ * The Board that generates a Move fills the same object in again at its next getMoves
+ * after the same number of moves made, so a search allocates no Moves once it has been
+ * as deep as it goes.
+ */
+class Move {
+
+    // one action for each of the first two living units, second is null when only one
+    // is left
+    Action first;
+    Action second;
+    // Zobrist hash of the child, the same as the child's getHash()
+    long hash;
+    long key;
+    // higher is better for the side making the move
+    int score;
+
+    Move set(Action first, Action second, long hash, long key, int score) {
+        this.first = first;
+        this.second = second;
+        this.hash = hash;
+        this.key = key;
+        this.score = score;
+        return this;
+    }
+
+    /**
+     * @return a new map from unit id to action, as SEPIA and GameStateChild expect
+     */
+    Map<Integer, Action> toActionMap() {
+        Map<Integer, Action> actionMap = new HashMap<>();
+        actionMap.put(first.getUnitId(), first);
+        if (second != null) {
+            actionMap.put(second.getUnitId(), second);
+        }
+        return actionMap;
+    }
+}
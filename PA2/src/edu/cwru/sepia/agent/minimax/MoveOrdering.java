@@ -0,0 +1,131 @@
+package edu.cwru.sepia.agent.minimax;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.action.DirectedAction;
+import edu.cwru.sepia.action.LocatedAction;
+import edu.cwru.sepia.action.TargetedAction;
+
+import java.util.List;
+
+/**
+ * Killer moves and the history heuristic for ordering children in MinimaxAlphaBeta.
+ *
+ * A move is the set of unit actions that produces a child, reduced to a long key so the
+ * same move can be recognised in a sibling position. The two most recent moves that caused
+ * a cutoff at each ply are the killers for that ply, and every cutoff adds depth^2 to the
+ * history score of its move (in a fixed table indexed by the low bits of the key, so two
+ * moves may share a score). Moves are tried transposition table move first, then the
+ * killers, then the rest by history score and then by their static score.
+ */
+class MoveOrdering {
+
+    static final int MAX_PLY = 64;
+
+    private static final int HISTORY_BITS = 12;
+    private static final int HISTORY_MASK = (1 << HISTORY_BITS) - 1;
+
+    private final long[] killers = new long[MAX_PLY * 2];
+    private final int[] history = new int[1 << HISTORY_BITS];
+
+    /**
+     * @return the part of a move's key one unit action adds, the same wherever it is
+     *         played
+     */
+    static long actionKey(Action action) {
+        long part = action.getUnitId();
+        if (action instanceof TargetedAction) {
+            part = (part * 31 + 1) * 1009 + ((TargetedAction) action).getTargetId();
+        } else if (action instanceof LocatedAction) {
+            LocatedAction located = (LocatedAction) action;
+            part = ((part * 31 + 2) * 1009 + located.getX()) * 1009 + located.getY();
+        } else if (action instanceof DirectedAction) {
+            part = (part * 31 + 3) * 1009 + ((DirectedAction) action).getDirection().ordinal();
+        }
+        part *= 0x9e3779b97f4a7c15L;
+        return part ^ (part >>> 29);
+    }
+
+    /**
+     * @param firstKey actionKey of one unit's action
+     * @param secondKey actionKey of the other unit's action, 0 if only one unit acts
+     * @return a key for the unit actions that is the same whatever order the units are
+     *         listed in
+     */
+    static long moveKey(long firstKey, long secondKey) {
+        return 1 + firstKey + secondKey;
+    }
+
+    /**
+     * Reorders the moves in place. Moves the tables know nothing about are tried in order
+     * of their static score.
+     *
+     * @param moves moves of the side to play
+     * @param ply distance of the parent from the root
+     * @param bestMove hash of the child the transposition table remembers as best, or 0
+     * @param scores scratch space at least moves.size() long, each searching thread
+     *               passes its own for the ply
+     * @return the same list
+     */
+    List<Move> order(List<Move> moves, int ply, long bestMove, long[] scores) {
+        long killer1 = killers[ply * 2];
+        long killer2 = killers[ply * 2 + 1];
+
+        // insertion sort by score, then by static score
+        int size = moves.size();
+        for (int i = 0; i < size; i++) {
+            Move move = moves.get(i);
+            long score;
+            if (bestMove != 0 && move.hash == bestMove) {
+                score = Long.MAX_VALUE;
+            } else if (move.key == killer1) {
+                score = Long.MAX_VALUE - 1;
+            } else if (move.key == killer2) {
+                score = Long.MAX_VALUE - 2;
+            } else {
+                score = history[(int) move.key & HISTORY_MASK];
+            }
+
+            int j = i;
+            while (j > 0 && (scores[j - 1] < score
+                    || scores[j - 1] == score && moves.get(j - 1).score < move.score)) {
+                scores[j] = scores[j - 1];
+                moves.set(j, moves.get(j - 1));
+                j--;
+            }
+            scores[j] = score;
+            moves.set(j, move);
+        }
+        return moves;
+    }
+
+    /**
+     * Remembers a move that caused a beta (or alpha) cutoff.
+     *
+     * @param move the move whose value fell outside the window
+     * @param ply distance of the parent from the root
+     * @param depth plies searched below the parent
+     */
+    void cutoff(Move move, int ply, int depth) {
+        long key = move.key;
+        if (killers[ply * 2] != key) {
+            killers[ply * 2 + 1] = killers[ply * 2];
+            killers[ply * 2] = key;
+        }
+
+        int slot = (int) key & HISTORY_MASK;
+        history[slot] = Math.min(history[slot] + depth * depth, Integer.MAX_VALUE / 2);
+    }
+
+    /**
+     * Called before each turn's search: killers belong to the old root's plies and are
+     * dropped, history is halved so recent turns count more.
+     */
+    void newTurn() {
+        for (int i = 0; i < killers.length; i++) {
+            killers[i] = 0;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+    }
+}
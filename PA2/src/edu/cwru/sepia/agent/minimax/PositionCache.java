@@ -0,0 +1,116 @@
+package edu.cwru.sepia.agent.minimax;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Best moves found by earlier games, kept in a memory-mapped file so they survive from
+ * one run to the next.
+ *
+ * The file is a fixed-size table indexed by the low bits of a state's Zobrist hash mixed
+ * with a key of the map, since the same units on the same tiles are a different position
+ * on a map with other obstacles. Each slot holds the key, the hash of the best child and
+ * the depth it was searched to. A slot is overwritten by a different position or by a
+ * deeper search of the same one, and as in the TranspositionTable the key is stored
+ * xor'ed with the other words, so a slot that was only half written reads as empty.
+ *
+ * A file with another header, from another version of the utility or of this format, is
+ * cleared when it is opened.
+ */
+class PositionCache {
+
+    static final File DEFAULT_FILE = new File("position_cache/positions.bin");
+
+    private static final long MAGIC = 0x5041325f43414348L;
+    // change when the utility or the search changes what the best move is
+    private static final int VERSION = 2;
+    private static final int SIZE_BITS = 16;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int mask;
+
+    private PositionCache(MappedByteBuffer buffer, int slots) {
+        this.buffer = buffer;
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Maps the file, creating it and its directory if they do not exist yet.
+     */
+    static PositionCache open(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        int slots = 1 << SIZE_BITS;
+        long size = HEADER_BYTES + (long) slots * SLOT_BYTES;
+
+        // the mapping stays valid once the file is closed
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            boolean valid = channel.size() == size;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || buffer.getLong(0) != MAGIC || buffer.getInt(8) != VERSION || buffer.getInt(12) != slots) {
+                for (int i = 0; i < size; i += 8) {
+                    buffer.putLong(i, 0);
+                }
+                buffer.putLong(0, MAGIC);
+                buffer.putInt(8, VERSION);
+                buffer.putInt(12, slots);
+            }
+            return new PositionCache(buffer, slots);
+        }
+    }
+
+    /**
+     * @return a key of the map the positions are on, to mix into their hashes
+     */
+    static long mapKey(boolean[][] obstacles) {
+        long key = (Arrays.deepHashCode(obstacles) * 31L + obstacles.length) * 0x9e3779b97f4a7c15L;
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * @param key Zobrist hash of the state xor'ed with mapKey
+     * @param minDepth the shallowest search the caller will take a move from
+     * @return hash of the best child, 0 if the position is not cached at that depth
+     */
+    long bestMove(long key, int minDepth) {
+        int slot = HEADER_BYTES + ((int) key & mask) * SLOT_BYTES;
+        long check = buffer.getLong(slot);
+        long bestMove = buffer.getLong(slot + 8);
+        long depth = buffer.getLong(slot + 16);
+        if (depth < minDepth || (check ^ bestMove ^ depth) != key) {
+            return 0;
+        }
+        return bestMove;
+    }
+
+    /**
+     * @param key Zobrist hash of the state xor'ed with mapKey
+     * @param bestMove hash of the best child found
+     * @param depth plies the search looked ahead
+     */
+    void store(long key, long bestMove, int depth) {
+        int slot = HEADER_BYTES + ((int) key & mask) * SLOT_BYTES;
+        long oldBestMove = buffer.getLong(slot + 8);
+        long oldDepth = buffer.getLong(slot + 16);
+        if ((buffer.getLong(slot) ^ oldBestMove ^ oldDepth) == key && oldDepth > depth) {
+            return;
+        }
+
+        buffer.putLong(slot, key ^ bestMove ^ depth);
+        buffer.putLong(slot + 8, bestMove);
+        buffer.putLong(slot + 16, depth);
+    }
+
+    /**
+     * Writes what was stored out to the file.
+     */
+    void flush() {
+        buffer.force();
+    }
+}
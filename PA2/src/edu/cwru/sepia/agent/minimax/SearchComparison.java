@@ -0,0 +1,179 @@
+package edu.cwru.sepia.agent.minimax;
+
+import edu.cwru.sepia.agent.Agent;
+import edu.cwru.sepia.environment.model.persistence.generated.XmlState;
+import edu.cwru.sepia.environment.model.state.State;
+import edu.cwru.sepia.environment.model.state.XmlStateCreator;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plays a game on each map with a serial and a parallel MinimaxAlphaBeta side by side and
+ * checks every move they choose against a plain alpha-beta search of the same depth, with
+ * no transposition table or move ordering. Both agents keep their tables across turns, as
+ * they do in a SEPIA episode. The footmen follow the serial agent's move and the archers
+ * answer with the move that leaves the footmen the lowest utility.
+ *
+ * Usage: java edu.cwru.sepia.agent.minimax.SearchComparison plies threads [map.xml ...]
+ * With no maps every data/Game*.xml map (not the configs) is used.
+ *
+ * Prints the time each agent spent searching, and exits with status 1 if either agent
+ * chose a move worth less than the best one.
+ */
+public class SearchComparison {
+
+    private static final int TURNS = 60;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SearchComparison plies threads [map.xml ...]");
+            System.exit(2);
+        }
+        int plies = Integer.parseInt(args[0]);
+        String threads = args[1];
+        List<String> maps = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : defaultMaps();
+
+        System.out.println(String.format("%-28s %6s %10s %10s %10s %10s", "map", "turns",
+                "serial ms", "parallel ms", "serial bad", "parallel bad"));
+        boolean allBest = true;
+        for (String map : maps) {
+            MinimaxAlphaBeta serial = new MinimaxAlphaBeta(0, new String[]{Integer.toString(plies), "0", "1"});
+            MinimaxAlphaBeta parallel = new MinimaxAlphaBeta(0, new String[]{Integer.toString(plies), "0", threads});
+
+            GameState state = new GameState(load(map));
+            long serialNanos = 0;
+            long parallelNanos = 0;
+            int serialWorse = 0;
+            int parallelWorse = 0;
+            int turn = 0;
+            for (; turn < TURNS && !over(state); turn++) {
+                GameStateChild root = new GameStateChild(null, state);
+                double best = plainSearch(state.toBoard(), plies, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+                long startTime = System.nanoTime();
+                GameStateChild serialChild = serial.alphaBetaSearch(root, plies,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                serialNanos += System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                GameStateChild parallelChild = parallel.alphaBetaSearch(root, plies,
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+                parallelNanos += System.nanoTime() - startTime;
+
+                if (moveValue(serialChild, plies) != best) {
+                    serialWorse++;
+                    System.err.println(String.format("%s turn %d: serial move worth %.2f, best %.2f",
+                            map, turn, moveValue(serialChild, plies), best));
+                }
+                if (moveValue(parallelChild, plies) != best) {
+                    parallelWorse++;
+                    System.err.println(String.format("%s turn %d: parallel move worth %.2f, best %.2f",
+                            map, turn, moveValue(parallelChild, plies), best));
+                }
+
+                state = archerReply(serialChild.state);
+                if (state == null) {
+                    break;
+                }
+            }
+
+            System.out.println(String.format("%-28s %6d %10d %10d %10d %10d", new File(map).getName(), turn,
+                    serialNanos / 1000000, parallelNanos / 1000000, serialWorse, parallelWorse));
+            allBest &= serialWorse == 0 && parallelWorse == 0;
+        }
+
+        if (!allBest) {
+            System.exit(1);
+        }
+        // the parallel agent's pool threads are not daemons
+        System.exit(0);
+    }
+
+    private static State.StateView load(String file) throws Exception {
+        XmlState xml = JAXBContext.newInstance(XmlState.class).createUnmarshaller()
+                .unmarshal(new StreamSource(new File(file)), XmlState.class).getValue();
+        return new XmlStateCreator(xml).createState().getView(Agent.OBSERVER_ID);
+    }
+
+    private static List<String> defaultMaps() {
+        List<String> maps = new ArrayList<>();
+        File[] files = new File("data").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith("Game") && !name.startsWith("GameConfig") && name.endsWith(".xml")) {
+                    maps.add(file.getPath());
+                }
+            }
+        }
+        maps.sort(null);
+        return maps;
+    }
+
+    private static boolean over(GameState state) {
+        Board board = state.toBoard();
+        return board.footmenDefeated() || board.archersDefeated();
+    }
+
+    /**
+     * @return the value of the footmen's move at the depth the root was searched to, a
+     *         root with no moves is its own child and keeps its value
+     */
+    private static double moveValue(GameStateChild child, int plies) {
+        Board board = child.state.toBoard();
+        int depth = board.isOurTurn() ? plies : plies - 1;
+        return plainSearch(board, depth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @return the state after the archers' move that leaves the footmen the lowest
+     *         utility, null if the archers have no move
+     */
+    private static GameState archerReply(GameState state) {
+        GameState reply = null;
+        for (GameStateChild child : state.getChildren()) {
+            if (reply == null || child.state.getUtility() < reply.getUtility()) {
+                reply = child.state;
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Alpha-beta over the Board in the order getMoves gives, with nothing remembered
+     * between nodes, so its value is the minimax value at exactly this depth.
+     */
+    private static double plainSearch(Board board, int depth, double alpha, double beta) {
+        if (depth <= 0) {
+            return board.getUtility();
+        }
+        List<Move> moves = new ArrayList<>(board.getMoves());
+        if (moves.isEmpty()) {
+            return board.getUtility();
+        }
+
+        boolean maximizing = board.isOurTurn();
+        double bestValue = maximizing ? -Double.MAX_VALUE : Double.MAX_VALUE;
+        for (Move move : moves) {
+            board.make(move);
+            double value = plainSearch(board, depth - 1, alpha, beta);
+            board.unmake(move);
+            if (maximizing) {
+                bestValue = Math.max(bestValue, value);
+                alpha = Math.max(alpha, bestValue);
+            } else {
+                bestValue = Math.min(bestValue, value);
+                beta = Math.min(beta, bestValue);
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return bestValue;
+    }
+}
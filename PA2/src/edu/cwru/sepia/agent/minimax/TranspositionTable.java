@@ -0,0 +1,119 @@
+package edu.cwru.sepia.agent.minimax;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of search results keyed by GameState Zobrist hash, kept in parallel
+ * primitive arrays so storing and probing never allocates.
+ *
+ * Each slot remembers the full hash, the depth that was searched below the state, the
+ * value found and whether that value is exact or only a bound (the search was cut off by
+ * alpha or beta), plus the hash of the best child so it can be tried first next time.
+ * A slot is indexed by the low bits of the hash and is overwritten by a different state
+ * or by a deeper search of the same one. Depth 0 marks an empty slot, leaves are never
+ * stored.
+ *
+ * The table is shared by the threads of a parallel search. A slot's four words are read
+ * and written under one of LOCK_COUNT locks picked by the slot's low bits, so a probe
+ * never sees half of an entry another thread is storing.
+ */
+class TranspositionTable {
+
+    static final int DEFAULT_SIZE_BITS = 18;
+
+    static final byte EXACT = 0;
+    static final byte LOWER_BOUND = 1;
+    static final byte UPPER_BOUND = 2;
+
+    private static final int LOCK_COUNT = 256;
+
+    /**
+     * A copy of one slot, filled in by probe. Each searching thread keeps its own.
+     */
+    static final class Entry {
+        int depth;
+        double value;
+        byte bound;
+        // hash of the best child found, 0 if there was none
+        long bestMove;
+    }
+
+    private final int mask;
+    private final Object[] locks = new Object[LOCK_COUNT];
+    private final long[] hashes;
+    private final long[] values;
+    private final long[] bestMoves;
+    // depth in the low byte, bound in the next
+    private final long[] infos;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param sizeBits the table holds 2^sizeBits entries
+     */
+    TranspositionTable(int sizeBits) {
+        int size = 1 << sizeBits;
+        mask = size - 1;
+        hashes = new long[size];
+        values = new long[size];
+        bestMoves = new long[size];
+        infos = new long[size];
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param entry filled in with the slot if the state is in the table
+     * @return false if the state is not in the table
+     */
+    boolean probe(long hash, Entry entry) {
+        probes.increment();
+        int slot = (int) hash & mask;
+        long value;
+        long bestMove;
+        long info;
+        synchronized (locks[slot & (LOCK_COUNT - 1)]) {
+            info = infos[slot];
+            if (info == 0 || hashes[slot] != hash) {
+                return false;
+            }
+            value = values[slot];
+            bestMove = bestMoves[slot];
+        }
+
+        hits.increment();
+        entry.depth = (int) (info & 0xff);
+        entry.value = Double.longBitsToDouble(value);
+        entry.bound = (byte) (info >>> 8);
+        entry.bestMove = bestMove;
+        return true;
+    }
+
+    /**
+     * @param depth plies searched below the state, at least 1
+     */
+    void store(long hash, int depth, double value, byte bound, long bestMove) {
+        int slot = (int) hash & mask;
+        long valueBits = Double.doubleToRawLongBits(value);
+        long info = Math.min(depth, Byte.MAX_VALUE) | (long) bound << 8;
+        synchronized (locks[slot & (LOCK_COUNT - 1)]) {
+            if (hashes[slot] == hash && (infos[slot] & 0xff) > depth) {
+                return;
+            }
+            hashes[slot] = hash;
+            values[slot] = valueBits;
+            bestMoves[slot] = bestMove;
+            infos[slot] = info;
+        }
+    }
+
+    long getProbes() {
+        return probes.sum();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+}
@@ -0,0 +1,68 @@
+package edu.cwru.sepia.agent.minimax;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing of GameStates. A state's hash is the xor of one key per
+ * living unit for its tile, one for its HP and the side-to-move key on our turns, so two
+ * states with the same units in the same places and health hash the same no matter which
+ * moves led to them. Dead units add nothing, so a state searched up to a kill hashes the
+ * same as the state SEPIA gives us next turn, where the unit is gone.
+ *
+ * Keys are drawn from a fixed seed, so the keys for a map are the same every turn and
+ * hashes stay valid in a transposition table kept across turns.
+ */
+class ZobristKeys {
+
+    private static final long SEED = 0x5eed2a11L;
+
+    private static ZobristKeys last;
+
+    private final int cells;
+    private final int unitCount;
+    private final int maxHp;
+    private final long[] positionKeys;
+    private final long[] hpKeys;
+    final long sideToMove;
+
+    private ZobristKeys(int cells, int unitCount, int maxHp) {
+        this.cells = cells;
+        this.unitCount = unitCount;
+        this.maxHp = maxHp;
+
+        Random random = new Random(SEED);
+        positionKeys = new long[unitCount * cells];
+        for (int i = 0; i < positionKeys.length; i++) {
+            positionKeys[i] = random.nextLong();
+        }
+        hpKeys = new long[unitCount * (maxHp + 1)];
+        for (int i = 0; i < hpKeys.length; i++) {
+            hpKeys[i] = random.nextLong();
+        }
+        sideToMove = random.nextLong();
+    }
+
+    /**
+     * @param cells width * height of the map
+     * @param unitCount one more than the largest unit id
+     * @param maxHp largest health any unit can have
+     * @return keys for the map, the same instance as last turn if nothing changed
+     */
+    static synchronized ZobristKeys forMap(int cells, int unitCount, int maxHp) {
+        if (last == null || last.cells != cells || last.unitCount < unitCount || last.maxHp < maxHp) {
+            last = new ZobristKeys(cells, unitCount, maxHp);
+        }
+        return last;
+    }
+
+    /**
+     * @return the key of a unit standing on the cell with the given health, 0 for a dead
+     *         unit
+     */
+    long unit(int id, int cell, int hp) {
+        if (hp <= 0) {
+            return 0;
+        }
+        return positionKeys[id * cells + cell] ^ hpKeys[id * (maxHp + 1) + Math.min(hp, maxHp)];
+    }
+}
@@ -0,0 +1,323 @@
+package edu.cwru.sepia.agent;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Timers, search counters and a middleStep latency histogram for an agent, printed at
+ * terminalStep.
+ *
+ * Counters belong to one agent and are kept per thread, so a search running on the agent
+ * thread or on a worker pool bumps a plain long in its own array without locking or
+ * allocating. The static count goes to the agent the calling thread is bound to: start
+ * binds the agent thread, and the threads of a pool from newPool are bound to the agent
+ * that made it. Counts on an unbound thread are dropped. A search that already counts its
+ * own work should add the total once when it finishes instead of calling count in its
+ * inner loop. The per-thread arrays are only summed when the agent asks for its counts,
+ * and a pool thread's array is folded into the agent's total when the thread ends.
+ *
+ * Phase times and the step histogram belong to one agent and must only be recorded from
+ * its own thread. The histogram keeps 16 linear buckets per power of two of nanoseconds,
+ * so any recorded latency is reported within about 6% of its real value.
+ *
+ * Every project keeps its own copy of this class in edu.cwru.sepia.agent, keep them the
+ * same.
+ */
+public final class AgentMetrics {
+
+    public enum Counter
+    {
+        NODES_EXPANDED("nodes expanded"),
+        CHILDREN_GENERATED("children generated"),
+        HEURISTIC_CALLS("heuristic calls"),
+        Q_EVALUATIONS("Q evaluations");
+
+        private final String label;
+
+        Counter(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    private static final int COUNTERS = Counter.values().length;
+
+    // the counters of the agent this thread is bound to, null if it is not bound
+    private static final ThreadLocal<long[]> BOUND_COUNTERS = new ThreadLocal<long[]>();
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    private final String name;
+    private final String[] phases;
+    private final long[] phaseNanos;
+    private final long[] phaseCalls;
+
+    private final long[] stepBuckets = new long[BUCKETS];
+    private long steps;
+    private long stepNanos;
+    private long maxStepNanos;
+
+    // this agent's counters on every live thread bound to it, and the counts of its
+    // threads that have ended
+    private final List<long[]> threadCounters = new ArrayList<long[]>();
+    private final long[] endedCounters = new long[COUNTERS];
+    private final ThreadLocal<long[]> counters = ThreadLocal.withInitial(() -> {
+        long[] counters = new long[COUNTERS];
+        synchronized(threadCounters) {
+            threadCounters.add(counters);
+        }
+        return counters;
+    });
+
+    private final long[] counterBaseline = new long[COUNTERS];
+
+    /**
+     * @param name printed above the dump, usually the agent class
+     * @param phases names of the timed phases, a phase is referred to by its index here
+     */
+    public AgentMetrics(String name, String... phases)
+    {
+        this.name = name;
+        this.phases = phases;
+        this.phaseNanos = new long[phases.length];
+        this.phaseCalls = new long[phases.length];
+        reset();
+    }
+
+    public static void count(Counter counter)
+    {
+        long[] counters = BOUND_COUNTERS.get();
+        if(counters != null) counters[counter.ordinal()]++;
+    }
+
+    public static void count(Counter counter, long amount)
+    {
+        long[] counters = BOUND_COUNTERS.get();
+        if(counters != null) counters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Sends the counts made on the calling thread to this agent from now on.
+     */
+    public void bind()
+    {
+        BOUND_COUNTERS.set(counters.get());
+    }
+
+    /**
+     * @return a pool whose threads count for this agent
+     */
+    public ForkJoinPool newPool(int threads)
+    {
+        return new ForkJoinPool(threads, pool -> new ForkJoinWorkerThread(pool) {
+            @Override
+            protected void onStart()
+            {
+                super.onStart();
+                bind();
+            }
+
+            @Override
+            protected void onTermination(Throwable exception)
+            {
+                threadEnded();
+                super.onTermination(exception);
+            }
+        }, null, false);
+    }
+
+    /**
+     * Binds the calling thread to this agent.
+     *
+     * @return the current time to pass to stop or stepFinished
+     */
+    public long start()
+    {
+        bind();
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since startTime to the phase.
+     *
+     * @return the elapsed nanoseconds
+     */
+    public long stop(int phase, long startTime)
+    {
+        long elapsed = System.nanoTime() - startTime;
+        add(phase, elapsed);
+        return elapsed;
+    }
+
+    public void add(int phase, long nanos)
+    {
+        phaseNanos[phase] += nanos;
+        phaseCalls[phase]++;
+    }
+
+    /**
+     * Records one middleStep that began at startTime in the latency histogram.
+     *
+     * @return the elapsed nanoseconds
+     */
+    public long stepFinished(long startTime)
+    {
+        long elapsed = Math.max(System.nanoTime() - startTime, 0);
+        stepBuckets[bucket(elapsed)]++;
+        steps++;
+        stepNanos += elapsed;
+        if(elapsed > maxStepNanos) maxStepNanos = elapsed;
+        return elapsed;
+    }
+
+    public long getPhaseNanos(int phase)
+    {
+        return phaseNanos[phase];
+    }
+
+    public long getPhaseCalls(int phase)
+    {
+        return phaseCalls[phase];
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @param percent 0 to 100
+     * @return the step latency at or below which the given percent of steps finished,
+     *         rounded down to its histogram bucket, 0 if no step was recorded
+     */
+    public long getStepPercentile(double percent)
+    {
+        if(steps == 0) return 0;
+
+        long rank = Math.max((long) Math.ceil(percent / 100.0 * steps), 1);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += stepBuckets[i];
+            if(seen >= rank) return Math.min(bucketValue(i), maxStepNanos);
+        }
+        return maxStepNanos;
+    }
+
+    /**
+     * @return the count from every thread bound to this agent since the last reset
+     */
+    public long getCount(Counter counter)
+    {
+        return sum(counter.ordinal()) - counterBaseline[counter.ordinal()];
+    }
+
+    /**
+     * Clears the phases and the histogram and starts counting from zero again, for agents
+     * that run several episodes.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < phases.length; i++) {
+            phaseNanos[i] = 0;
+            phaseCalls[i] = 0;
+        }
+        for(int i = 0; i < BUCKETS; i++) {
+            stepBuckets[i] = 0;
+        }
+        steps = 0;
+        stepNanos = 0;
+        maxStepNanos = 0;
+        for(int i = 0; i < COUNTERS; i++) {
+            counterBaseline[i] = sum(i);
+        }
+    }
+
+    public void dump()
+    {
+        dump(System.out);
+    }
+
+    public void dump(PrintStream out)
+    {
+        out.println(name + " metrics:");
+        for(int i = 0; i < phases.length; i++) {
+            out.println(String.format("  %-18s %8d calls %12.3f ms %10.1f us/call", phases[i], phaseCalls[i],
+                    phaseNanos[i] / 1e6, phaseCalls[i] == 0 ? 0.0 : phaseNanos[i] / 1e3 / phaseCalls[i]));
+        }
+
+        StringBuilder latency = new StringBuilder(String.format("  %-18s %8d steps %12.3f ms", "middleStep",
+                steps, stepNanos / 1e6));
+        for(int i = 0; i < PERCENTILES.length; i++) {
+            latency.append(String.format("  %s %.1f us", PERCENTILE_LABELS[i], getStepPercentile(PERCENTILES[i]) / 1e3));
+        }
+        latency.append(String.format("  max %.1f us", maxStepNanos / 1e3));
+        out.println(latency);
+
+        for(Counter counter : Counter.values()) {
+            long count = getCount(counter);
+            if(count != 0) {
+                out.println(String.format("  %-18s %14d", counter.label, count));
+            }
+        }
+    }
+
+    private long sum(int counter)
+    {
+        synchronized(threadCounters) {
+            long total = endedCounters[counter];
+            for(long[] counters : threadCounters) {
+                total += counters[counter];
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Moves the calling thread's counts into the ended total and drops its array.
+     */
+    private void threadEnded()
+    {
+        long[] ended = counters.get();
+        synchronized(threadCounters) {
+            for(int i = 0; i < COUNTERS; i++) {
+                endedCounters[i] += ended[i];
+            }
+            threadCounters.remove(ended);
+        }
+        counters.remove();
+        BOUND_COUNTERS.remove();
+    }
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each, above that every power of two is split
+     * into SUB_BUCKETS buckets by the bits just below the highest one.
+     */
+    private static int bucket(long nanos)
+    {
+        if(nanos < SUB_BUCKETS) return (int) nanos;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (nanos >>> shift);
+    }
+
+    /**
+     * @return the smallest value that falls in the bucket
+     */
+    private static long bucketValue(int bucket)
+    {
+        if(bucket < 2 * SUB_BUCKETS) return bucket;
+
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS;
+        return subBucket << shift;
+    }
+}
@@ -1,5 +1,6 @@
 package edu.cwru.sepia.agent.planner;
 
+import edu.cwru.sepia.agent.AgentMetrics;
 import edu.cwru.sepia.agent.planner.actions.*;
 import edu.cwru.sepia.agent.planner.resources.*;
 import edu.cwru.sepia.environment.model.state.ResourceNode;
@@ -60,7 +61,9 @@ public class GameState implements Comparable<GameState> {
     private int amountGold;
     private int amountWood;
 
+    // the actions from the parent state to this one, the rest of the plan is in the StateIndex
     private ArrayList<StripsAction> plan = new ArrayList<>();
+    private int index = StateIndex.NONE;
 
     /**
      * Construct a GameState from a stateview object. This is used to construct the initial search node. All other
@@ -122,8 +125,6 @@ public class GameState implements Comparable<GameState> {
         this.cost = parent.cost;
         this.amountGold = parent.amountGold;
         this.amountWood = parent.amountWood;
-
-        this.plan = new ArrayList<>(parent.plan);
     }
 
     /**
@@ -160,10 +161,24 @@ public class GameState implements Comparable<GameState> {
         return townhallPosition;
     }
 
+    /**
+     * @return the actions that led to this state from its parent
+     */
     public  ArrayList<StripsAction> getPlan(){
         return plan;
     }
 
+    /**
+     * @return this state's index in the planner's StateIndex, StateIndex.NONE before it is added
+     */
+    public int getIndex(){
+        return index;
+    }
+
+    public void setIndex(int index){
+        this.index = index;
+    }
+
 
     /**
      * Unlike in the first A* assignment there are many possible goal states. As long as the wood and gold requirements
@@ -219,6 +234,7 @@ public class GameState implements Comparable<GameState> {
             }
         }
 
+        AgentMetrics.count(AgentMetrics.Counter.CHILDREN_GENERATED, children.size());
         return children;
     }
 
@@ -233,6 +249,7 @@ public class GameState implements Comparable<GameState> {
      * @return The value estimated remaining cost to reach a goal state from this state.
      */
     public double heuristic() {
+        AgentMetrics.count(AgentMetrics.Counter.HEURISTIC_CALLS);
         double goldLeft = (requiredGold - amountGold)*RESOURCES_LEFT_WEIGHT;
         double woodLeft = (requiredWood - amountWood)*RESOURCES_LEFT_WEIGHT;
         double peasantCapacity = (100 - peasant.getGold() - peasant.getWood())*PEASANT_CAPACITY_WEIGHT;
@@ -300,14 +317,18 @@ public class GameState implements Comparable<GameState> {
     }
 
     /**
-     * @return a list of Actions to be implemented.
+     * Packs what distinguishes this state from others in the search into two longs: the
+     * totals deposited, then the peasant's position and what it carries. The resource
+     * amounts are not included as every state shares the same resource nodes.
+     *
+     * @return a key that is equal for equal states
      */
-    public Stack<StripsAction> getGamePlan() {
-        Stack<StripsAction> plan = new Stack<>();
-        for (int i = getPlan().size() - 1; i > -1; i--) {
-            plan.push(this.plan.get(i));
-        }
-        return plan;
+    public long[] packedKey() {
+        return new long[] {
+                (amountGold & 0xffffffL) << 40 | (amountWood & 0xffffffL) << 16,
+                (peasant.getPosition().x & 0xfffL) << 36 | (peasant.getPosition().y & 0xfffL) << 24
+                        | (peasant.getGold() & 0xfffL) << 12 | (peasant.getWood() & 0xfffL)
+        };
     }
 
     /**
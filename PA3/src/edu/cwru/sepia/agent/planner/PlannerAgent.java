@@ -2,6 +2,7 @@ package edu.cwru.sepia.agent.planner;
 
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.agent.Agent;
+import edu.cwru.sepia.agent.AgentMetrics;
 import edu.cwru.sepia.agent.planner.actions.StripsAction;
 import edu.cwru.sepia.environment.model.history.History;
 import edu.cwru.sepia.environment.model.state.State;
@@ -16,6 +17,10 @@ public class PlannerAgent extends Agent {
 
     private PEAgent peAgent;
 
+    private static final int PLAN_PHASE = 0;
+    private static final int EXECUTE_PHASE = 1;
+    private final AgentMetrics metrics = new AgentMetrics("PlannerAgent", "plan", "execute");
+
     public PlannerAgent(int playernum, String[] params) {
         super(playernum);
 
@@ -32,7 +37,10 @@ public class PlannerAgent extends Agent {
 
     @Override
     public Map<Integer, Action> initialStep(State.StateView stateView, History.HistoryView historyView) {
+        metrics.reset();
+        long startTime = metrics.start();
         Stack<StripsAction> plan = AstarSearch(new GameState(stateView, playernum, requiredGold, requiredWood));
+        metrics.stop(PLAN_PHASE, startTime);
 
         if(plan == null) {
             System.err.println("No plan was found");
@@ -55,11 +63,16 @@ public class PlannerAgent extends Agent {
             return null;
         }
 
-        return peAgent.middleStep(stateView, historyView);
+        long startTime = metrics.start();
+        Map<Integer, Action> actions = peAgent.middleStep(stateView, historyView);
+        metrics.add(EXECUTE_PHASE, metrics.stepFinished(startTime));
+        return actions;
     }
 
     @Override
-    public void terminalStep(State.StateView stateView, History.HistoryView historyView) {}
+    public void terminalStep(State.StateView stateView, History.HistoryView historyView) {
+        metrics.dump();
+    }
 
     @Override
     public void savePlayerData(OutputStream outputStream) {}
@@ -81,35 +94,34 @@ public class PlannerAgent extends Agent {
                 (state1, state2) -> (int)(state1.getCost() + state1.heuristic() -
                         (state2.getCost() + state2.heuristic()))
         );
-        Set<GameState> openList = new HashSet<>();
-        Set<GameState> closedList = new HashSet<>();
+        // every state reached so far, open or closed, by its packed key with its cheapest path
+        StateIndex reached = new StateIndex();
 
-        boolean goalFound = false;
-
-        GameState currentState = startState;
-        openQueue.add(currentState);
-        openList.add(currentState);
+        startState.setIndex(reached.add(startState.packedKey(), StateIndex.NONE, startState.getPlan(),
+                startState.getCost()));
+        openQueue.add(startState);
 
         while (!openQueue.isEmpty()) {
-            closedList.add(currentState);
-            currentState = openQueue.poll();
-            openList.remove(currentState);
+            GameState currentState = openQueue.poll();
+            // a cheaper path to the same state was found after this one was queued
+            if (currentState.getCost() > reached.cost(currentState.getIndex())) {
+                continue;
+            }
 
             if (currentState.isGoal()) {
-                goalFound = true;
-                break;
+                return reached.plan(currentState.getIndex());
             }
+            AgentMetrics.count(AgentMetrics.Counter.NODES_EXPANDED);
 
             for(GameState child : currentState.generateChildren()) {
-                if(!openList.contains(child)) {
-                    if(!closedList.contains(child)) {
-                        openList.add(child);
-                        openQueue.add(child);
-                    }
+                int index = reached.add(child.packedKey(), currentState.getIndex(), child.getPlan(), child.getCost());
+                if(index != StateIndex.NONE) {
+                    child.setIndex(index);
+                    openQueue.add(child);
                 }
             }
         }
-        return goalFound ? currentState.getGamePlan() : null;
+        return null;
     }
 
     /**
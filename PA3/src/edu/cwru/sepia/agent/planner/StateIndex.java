@@ -0,0 +1,160 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Every state the planner has reached, kept as the packed key from GameState.packedKey
+ * instead of the GameState itself, with the cheapest cost found to it, the index of the
+ * state that path came from and the actions that led from there. Once a state has been
+ * expanded only this remains, and the plan to a state is rebuilt by following the parent
+ * indices back to the start.
+ *
+ * Keys and actions live in growing flat arrays. A state's key is the run between its
+ * start offset and the next state's; its actions are a run of their own, appended again
+ * when a cheaper path replaces them. The hash table is open addressing with linear
+ * probing over state indices, kept at most half full.
+ */
+class StateIndex {
+
+    static final int NONE = -1;
+
+    private long[] keys = new long[1024];
+    private int[] keyStarts = new int[256];
+    private StripsAction[] actions = new StripsAction[256];
+    private int actionsUsed;
+    private int[] actionStarts = new int[256];
+    private int[] actionCounts = new int[256];
+    private int[] parents = new int[256];
+    private double[] costs = new double[256];
+    private int size;
+
+    // state index + 1 in each slot, 0 for empty
+    private int[] table = new int[512];
+
+    /**
+     * @param key the state's packedKey
+     * @param parent index of the state it was reached from, NONE for the start
+     * @param stateActions the actions that led to it from the parent
+     * @param cost the cost of the path to it
+     * @return the index of the state if it is new or the path is cheaper than any found
+     *         before, NONE if the state was already reached at no higher cost
+     */
+    int add(long[] key, int parent, List<StripsAction> stateActions, double cost) {
+        int mask = table.length - 1;
+        int slot = (int) hash(key) & mask;
+        while(table[slot] != 0) {
+            int state = table[slot] - 1;
+            if(keyEquals(state, key)) {
+                if(costs[state] <= cost) {
+                    return NONE;
+                }
+                setPath(state, parent, stateActions, cost);
+                return state;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if(size + 2 > keyStarts.length) {
+            int capacity = keyStarts.length * 2;
+            keyStarts = Arrays.copyOf(keyStarts, capacity);
+            actionStarts = Arrays.copyOf(actionStarts, capacity);
+            actionCounts = Arrays.copyOf(actionCounts, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+        }
+        int keyEnd = keyStarts[size] + key.length;
+        if(keyEnd > keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keyEnd));
+        }
+
+        int state = size++;
+        System.arraycopy(key, 0, keys, keyStarts[state], key.length);
+        keyStarts[size] = keyEnd;
+        setPath(state, parent, stateActions, cost);
+
+        table[slot] = state + 1;
+        if(size * 2 > table.length) {
+            rehash();
+        }
+        return state;
+    }
+
+    /**
+     * @return the cheapest cost found to the state so far
+     */
+    double cost(int state) {
+        return costs[state];
+    }
+
+    /**
+     * @return the actions from the start to the state, the first one on top
+     */
+    Stack<StripsAction> plan(int state) {
+        Stack<StripsAction> plan = new Stack<>();
+        for(int s = state; s != NONE; s = parents[s]) {
+            for(int i = actionStarts[s] + actionCounts[s] - 1; i >= actionStarts[s]; i--) {
+                plan.push(actions[i]);
+            }
+        }
+        return plan;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void setPath(int state, int parent, List<StripsAction> stateActions, double cost) {
+        if(actionsUsed + stateActions.size() > actions.length) {
+            actions = Arrays.copyOf(actions, Math.max(actions.length * 2, actionsUsed + stateActions.size()));
+        }
+        actionStarts[state] = actionsUsed;
+        actionCounts[state] = stateActions.size();
+        for(StripsAction action : stateActions) {
+            actions[actionsUsed++] = action;
+        }
+        parents[state] = parent;
+        costs[state] = cost;
+    }
+
+    private boolean keyEquals(int state, long[] key) {
+        int start = keyStarts[state];
+        if(keyStarts[state + 1] - start != key.length) {
+            return false;
+        }
+        for(int i = 0; i < key.length; i++) {
+            if(keys[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for(int state = 0; state < size; state++) {
+            int slot = (int) hash(keys, keyStarts[state], keyStarts[state + 1]) & mask;
+            while(table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = state + 1;
+        }
+    }
+
+    private static long hash(long[] key) {
+        return hash(key, 0, key.length);
+    }
+
+    private static long hash(long[] words, int from, int to) {
+        long h = 1;
+        for(int i = from; i < to; i++) {
+            h = (h ^ words[i]) * 0x9e3779b97f4a7c15L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+}
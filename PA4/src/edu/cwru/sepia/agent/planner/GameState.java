@@ -1,5 +1,6 @@
 package edu.cwru.sepia.agent.planner;
 
+import edu.cwru.sepia.agent.AgentMetrics;
 import edu.cwru.sepia.agent.planner.actions.*;
 import edu.cwru.sepia.agent.planner.resources.*;
 import edu.cwru.sepia.environment.model.state.ResourceNode;
@@ -65,7 +66,9 @@ public class GameState implements Comparable<GameState> {
     private int amountWood;
     private int amountFood;
 
+    // the actions from the parent state to this one, the rest of the plan is in the StateIndex
     private ArrayList<StripsAction> plan = new ArrayList<>();
+    private int index = StateIndex.NONE;
 
     /**
      * Construct a GameState from a stateview object. This is used to construct the initial search node. All other
@@ -136,8 +139,6 @@ public class GameState implements Comparable<GameState> {
         this.amountGold = parent.amountGold;
         this.amountWood = parent.amountWood;
         this.amountFood = parent.amountFood;
-
-        this.plan = new ArrayList<>(parent.plan);
     }
 
     /**
@@ -187,10 +188,24 @@ public class GameState implements Comparable<GameState> {
         return townhallPosition;
     }
 
+    /**
+     * @return the actions that led to this state from its parent
+     */
     public  ArrayList<StripsAction> getPlan(){
         return plan;
     }
 
+    /**
+     * @return this state's index in the planner's StateIndex, StateIndex.NONE before it is added
+     */
+    public int getIndex(){
+        return index;
+    }
+
+    public void setIndex(int index){
+        this.index = index;
+    }
+
     public int getRemainingFood(){
         return amountFood;
     }
@@ -267,6 +282,7 @@ public class GameState implements Comparable<GameState> {
             }
         }
 
+        AgentMetrics.count(AgentMetrics.Counter.CHILDREN_GENERATED, children.size());
         return children;
     }
 
@@ -281,6 +297,7 @@ public class GameState implements Comparable<GameState> {
      * @return The value estimated remaining cost to reach a goal state from this state.
      */
     public double heuristic() {
+        AgentMetrics.count(AgentMetrics.Counter.HEURISTIC_CALLS);
         double goldLeft = (requiredGold - amountGold)*RESOURCES_LEFT_WEIGHT;
         double woodLeft = (requiredWood - amountWood)*RESOURCES_LEFT_WEIGHT;
         double peasantCapacity = (100 - peasant.getGold() - peasant.getWood())*PEASANT_CAPACITY_WEIGHT;
@@ -351,14 +368,25 @@ public class GameState implements Comparable<GameState> {
     }
 
     /**
-     * @return a list of Actions to be implemented.
+     * Packs what distinguishes this state from others in the search into a few longs: the
+     * totals deposited, the food left and the number of peasants in the first word, then
+     * one word per peasant, in id order, with its position and what it carries. The
+     * resource amounts are not included as every state shares the same resource nodes.
+     *
+     * @return a key that is equal for equal states
      */
-    public Stack<StripsAction> getGamePlan() {
-        Stack<StripsAction> plan = new Stack<>();
-        for (int i = getPlan().size() - 1; i > -1; i--) {
-            plan.push(this.plan.get(i));
+    public long[] packedKey() {
+        long[] key = new long[1 + peasants.size()];
+        key[0] = (amountGold & 0xffffffL) << 40 | (amountWood & 0xffffffL) << 16
+                | (amountFood & 0xffL) << 8 | (peasants.size() & 0xffL);
+        int i = 1;
+        for(Peasant p : peasants.values()) {
+            key[i++] = (p.getId() & 0xffffL) << 48 | (p.getPosition().x & 0xfffL) << 36
+                    | (p.getPosition().y & 0xfffL) << 24 | (p.getGold() & 0xfffL) << 12 | (p.getWood() & 0xfffL);
         }
-        return plan;
+        // the id is in the top bits, so this puts the peasants in id order
+        Arrays.sort(key, 1, key.length);
+        return key;
     }
 
     /**
@@ -74,6 +74,10 @@ public class RLAgent extends Agent {
 
     private State.StateView previousStateView;
 
+    private static final int LEARN_PHASE = 0;
+    private static final int SELECT_PHASE = 1;
+    private final AgentMetrics metrics = new AgentMetrics("RLAgent", "learn", "select");
+
     /**
      * constructor for RLAgent object
      *
@@ -198,6 +202,7 @@ public class RLAgent extends Agent {
      */
     @Override
     public Map<Integer, Action> middleStep(State.StateView stateView, History.HistoryView historyView) {
+        long startTime = metrics.start();
         killPointsAwarded = false;
         int previousTurnNumber = stateView.getTurnNumber() - 1;
 
@@ -205,8 +210,13 @@ public class RLAgent extends Agent {
             executeTurn(stateView, historyView, previousTurnNumber);
             previousStateView = stateView;
         }
+        long selectStartTime = metrics.start();
+        metrics.add(LEARN_PHASE, selectStartTime - startTime);
 
-        return generateAttackerActions(stateView, historyView);
+        Map<Integer, Action> actions = generateAttackerActions(stateView, historyView);
+        metrics.stop(SELECT_PHASE, selectStartTime);
+        metrics.stepFinished(startTime);
+        return actions;
     }
     /**
      * Function to generate actions for the array of current footman attackerws
@@ -261,6 +271,8 @@ public class RLAgent extends Agent {
             if (numEpisodesThisSeason == NUM_EVALUATION_EPISODES) {
                 averageRewards.add(cumulativeReward/NUM_EVALUATION_EPISODES);
                 printTestData(averageRewards);
+                metrics.dump();
+                metrics.reset();
 
                 numEpisodesThisSeason = 0;
                 cumulativeReward = 0.0;
@@ -506,6 +518,7 @@ public class RLAgent extends Agent {
     }
 
     private double calcQValueOfFeatures(double[] featureValues) {
+        AgentMetrics.count(AgentMetrics.Counter.Q_EVALUATIONS);
         double qValue = 0.0;
         for (int i = 0; i < stateFeatures.size(); i++) {
             qValue += weights[i]*featureValues[i];